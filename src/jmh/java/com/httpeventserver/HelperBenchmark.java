@@ -0,0 +1,33 @@
+package com.httpeventserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HelperBenchmark {
+    private final HttpEventServerPlugin plugin = new HttpEventServerPlugin();
+
+    public int healthRatio = 17;
+    public int healthScale = 30;
+    public int maxHealth = 255;
+    public String query = "resetLootArray=1&since=1234&topics=tick,chat";
+
+    @Benchmark
+    public int getNpcCurrentHealth() {
+        return HttpEventServerPlugin.getNpcCurrentHealth(healthRatio, healthScale, maxHealth, 0);
+    }
+
+    @Benchmark
+    public Map<String, String> queryToMap() {
+        return plugin.queryToMap(query);
+    }
+}
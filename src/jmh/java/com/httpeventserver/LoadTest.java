@@ -0,0 +1,266 @@
+package com.httpeventserver;
+
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.InventoryID;
+import net.runelite.api.NPC;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.events.NpcLootReceived;
+import net.runelite.client.game.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Headless load test of the whole plugin: the server runs against {@link StubClient}, a scripted
+ * client thread fires game ticks, chat messages, loot drops and inventory and equipment changes
+ * at fixed rates, and concurrent HTTP clients request every endpoint in turn. Reports throughput
+ * and tail latency per endpoint and the allocation rate of the server side threads. Exits with 1
+ * when any request failed. The state store is written to a temporary directory.
+ *
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--clients 32 --seconds 60 --chat 5 --loot 1 --containers 2"
+ * </pre>
+ */
+public final class LoadTest {
+    private static final List<String> ENDPOINTS = Arrays.asList("/events", "/events?fields=playerObject,tickCount",
+            "/inv", "/equip", "/bank", "/batch?include=events,inv,equip", "/npcs", "/chat", "/loot",
+            "/history?metric=currentHealth&step=10", "/status", "/metrics");
+    private static final String CLIENT_THREAD = "load-client-thread";
+    private static final String HTTP_CLIENT = "load-http-client";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "16"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int tickMillis = Integer.parseInt(options.getOrDefault("tick", "600"));
+        double chatPerSecond = Double.parseDouble(options.getOrDefault("chat", "2"));
+        double lootPerSecond = Double.parseDouble(options.getOrDefault("loot", "0.5"));
+        double containersPerSecond = Double.parseDouble(options.getOrDefault("containers", "1"));
+        Transport transport = Transport.valueOf(options.getOrDefault("transport", Transport.JDK_HTTP_SERVER.name()));
+        List<String> endpoints = options.containsKey("endpoints")
+                ? Arrays.asList(options.get("endpoints").split(",")) : ENDPOINTS;
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        //Everything the real client thread would do runs on this single thread
+        ScheduledExecutorService clientThread = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, CLIENT_THREAD));
+        StubClient stub = new StubClient();
+        Path stateDirectory = Files.createTempDirectory("httpeventserver-load-test");
+        HttpEventServerPlugin plugin = new HttpEventServerPlugin();
+        plugin.client = stub.client;
+        plugin.stateDirectory = stateDirectory.toFile();
+        plugin.clientThread = new ClientThread() {
+            @Override
+            public void invokeLater(Runnable runnable) {
+                clientThread.execute(runnable);
+            }
+
+            @Override
+            public void invoke(Runnable runnable) {
+                clientThread.execute(runnable);
+            }
+        };
+        plugin.config = new HttpEventServerConfig() {
+            @Override
+            public String apiPort() {
+                return String.valueOf(port);
+            }
+
+            @Override
+            public Transport transport() {
+                return transport;
+            }
+        };
+        clientThread.submit(() -> {
+            plugin.startUp();
+            return null;
+        }).get();
+
+        clientThread.scheduleAtFixedRate(() -> plugin.onGameTick(stub.tick()), 0, tickMillis, TimeUnit.MILLISECONDS);
+        AtomicLong messages = new AtomicLong();
+        if (chatPerSecond > 0) {
+            clientThread.scheduleAtFixedRate(() -> plugin.onChatMessage(chat(messages.incrementAndGet())),
+                    0, (long) (1_000_000 / chatPerSecond), TimeUnit.MICROSECONDS);
+        }
+        NPC goblin = StubClient.npc(1, 3029, "Goblin");
+        if (lootPerSecond > 0) {
+            clientThread.scheduleAtFixedRate(() -> plugin.onNpcLootReceived(new NpcLootReceived(goblin,
+                            Arrays.asList(new ItemStack(526, 1), new ItemStack(995, 12)))),
+                    0, (long) (1_000_000 / lootPerSecond), TimeUnit.MICROSECONDS);
+        }
+        //Alternate between the inventory and the equipment so both cached payloads are invalidated
+        AtomicLong containerChanges = new AtomicLong();
+        if (containersPerSecond > 0) {
+            clientThread.scheduleAtFixedRate(() -> plugin.onItemContainerChanged(stub.change(
+                            containerChanges.incrementAndGet() % 2 == 0 ? InventoryID.EQUIPMENT : InventoryID.INVENTORY)),
+                    0, (long) (1_000_000 / containersPerSecond), TimeUnit.MICROSECONDS);
+        }
+
+        System.out.printf("Load test on port %d, %s, %d clients, %ds warmup, %ds measured, tick %dms, %.1f chat/s, %.1f loot/s, %.1f container changes/s%n",
+                port, transport, clients, warmup, seconds, tickMillis, chatPerSecond, lootPerSecond, containersPerSecond);
+
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (String endpoint : endpoints) {
+            stats.put(endpoint, new Stats());
+        }
+        Stats total = new Stats();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            int first = c;
+            Thread thread = new Thread(() -> {
+                try {
+                    drive(port, endpoints, stats, total, first, warmupEnd, end);
+                } finally {
+                    done.countDown();
+                }
+            }, HTTP_CLIENT + "-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(warmupEnd - System.nanoTime())));
+        long allocatedBefore = serverAllocatedBytes();
+        long start = System.nanoTime();
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long allocated = serverAllocatedBytes() - allocatedBefore;
+
+        clientThread.submit(() -> {
+            plugin.shutDown();
+            return null;
+        }).get();
+        clientThread.shutdownNow();
+        try (Stream<Path> paths = Files.walk(stateDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+
+        long failures = report(stats, total, elapsed, allocated);
+        System.exit(failures > 0 ? 1 : 0);
+    }
+
+    private static void drive(int port, List<String> endpoints, Map<String, Stats> stats, Stats total, int first,
+                              long warmupEnd, long end) {
+        byte[] buffer = new byte[16 * 1024];
+        for (int i = first; System.nanoTime() < end; i++) {
+            String endpoint = endpoints.get(i % endpoints.size());
+            Stats endpointStats = stats.get(endpoint);
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + endpoint).openConnection();
+                ok = connection.getResponseCode() < 400;
+                // Read the body to the end so the keep-alive connection is reused
+                try (InputStream in = ok ? connection.getInputStream() : connection.getErrorStream()) {
+                    while (in != null && in.read(buffer) != -1) {
+                        //Discard
+                    }
+                }
+            } catch (IOException e) {
+                ok = false;
+            }
+            if (start > warmupEnd) {
+                long nanos = System.nanoTime() - start;
+                endpointStats.record(nanos, ok);
+                total.record(nanos, ok);
+            }
+        }
+    }
+
+    private static long report(Map<String, Stats> stats, Stats total, double elapsed, long allocated) {
+        System.out.printf("%n%-42s %10s %10s %9s %9s %9s %9s %8s%n", "endpoint", "requests", "req/s", "p50 ms",
+                "p99 ms", "p99.9 ms", "max ms", "failed");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            print(entry.getKey(), entry.getValue(), elapsed);
+        }
+        print("total", total, elapsed);
+
+        long requests = total.latency.getCount();
+        System.out.printf("%nServer allocation: %.1f MB/s, %.1f KB per request%n",
+                allocated / elapsed / (1024 * 1024), requests > 0 ? allocated / 1024.0 / requests : 0);
+        return total.failures.get();
+    }
+
+    private static void print(String name, Stats s, double elapsed) {
+        LatencyHistogram h = s.latency;
+        System.out.printf("%-42s %10d %10.0f %9.2f %9.2f %9.2f %9.2f %8d%n", name, h.getCount(), h.getCount() / elapsed,
+                h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6, h.percentile(0.999) / 1e6, h.getMax() / 1e6,
+                s.failures.get());
+    }
+
+    /**
+     * @return bytes allocated so far by every live thread that is not one of the load test's HTTP clients
+     */
+    private static long serverAllocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith(HTTP_CLIENT)) {
+                total += Math.max(0, hotspot.getThreadAllocatedBytes(thread.getId()));
+            }
+        }
+        return total;
+    }
+
+    private static ChatMessage chat(long sequence) {
+        ChatMessage message = new ChatMessage();
+        message.setType(sequence % 4 == 0 ? ChatMessageType.PUBLICCHAT : ChatMessageType.GAMEMESSAGE);
+        message.setName(sequence % 4 == 0 ? "Zezima" : "");
+        message.setMessage("Load test message " + sequence);
+        return message;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+
+        private void record(long nanos, boolean ok) {
+            latency.record(nanos);
+            if (!ok) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.httpeventserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick cost of the loot log (what removeOldItems does every tick) with a steady state of
+ * roughly lootSize retained drops: every operation is one tick that adds lootSize / 200 drops
+ * and expires the ones older than {@link LootLog#EXPIRY_TICKS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LootExpiryBenchmark {
+    private static final int[] IDS = {526, 995};
+    private static final int[] QUANTITIES = {1, 12};
+
+    @Param({"10", "100", "1000", "10000"})
+    public int lootSize;
+
+    private LootLog lootLog;
+    private int dropsPerTick;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        lootLog = new LootLog(lootSize + LootLog.EXPIRY_TICKS);
+        dropsPerTick = Math.max(1, lootSize / LootLog.EXPIRY_TICKS);
+        for (tick = 0; tick <= LootLog.EXPIRY_TICKS; tick++) {
+            addDrops();
+        }
+    }
+
+    private void addDrops() {
+        for (int i = 0; i < dropsPerTick; i++) {
+            lootLog.add(tick, 3029, "Goblin", "NPC", IDS, QUANTITIES);
+        }
+    }
+
+    @Benchmark
+    public int expireOnly() {
+        lootLog.expire(tick);
+        return lootLog.size();
+    }
+
+    @Benchmark
+    public int tick() {
+        tick++;
+        addDrops();
+        lootLog.expire(tick);
+        return lootLog.size();
+    }
+
+    @Benchmark
+    public LootLog.View tickAndPublish() {
+        tick();
+        return lootLog.view();
+    }
+}
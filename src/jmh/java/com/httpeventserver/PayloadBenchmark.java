@@ -0,0 +1,76 @@
+package com.httpeventserver;
+
+import net.runelite.api.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and serializing the endpoint payloads from a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PayloadBenchmark {
+    @Param({"0", "10", "100"})
+    public int lootSize;
+
+    private GameStateSnapshot snapshot;
+
+    @Setup
+    public void setUp() {
+        LootLog lootLog = new LootLog(Math.max(1, lootSize));
+        for (int i = 0; i < lootSize; i++) {
+            lootLog.add(i, 3029, "Goblin", "NPC" + i, new int[]{526, 995}, new int[]{1, 12});
+        }
+
+        Item[] inventory = new Item[28];
+        for (int i = 0; i < inventory.length; i++) {
+            inventory[i] = new Item(995 + i, i + 1);
+        }
+        Item[] equipment = new Item[14];
+        for (int i = 0; i < equipment.length; i++) {
+            equipment[i] = new Item(1000 + i, 1);
+        }
+
+        GameStateSnapshot.Coordinates coordinates = new GameStateSnapshot.Coordinates(3222, 3218, 0, 12850, 22, 18);
+        snapshot = new GameStateSnapshot(1, 1, 1, 100, 60000, "Welcome to RuneScape.", "WELCOME", 99,
+                Boolean.FALSE, Boolean.FALSE, Boolean.FALSE,
+                new GameStateSnapshot.PlayerState(808, 808, "null", 10000, 1000, 70, 70, 99, 99, coordinates),
+                new GameStateSnapshot.NpcState("Goblin", 3029, 2, 4, 5, coordinates),
+                new GameStateSnapshot.CameraState(1024, 256, 3222, 3218, -500),
+                inventory, equipment, BankIndex.EMPTY, lootLog.view(), NpcTracker.View.EMPTY);
+    }
+
+    @Benchmark
+    public byte[] events() {
+        return PayloadSerializer.toBytes(PayloadSerializer.events(snapshot));
+    }
+
+    @Benchmark
+    public byte[] inventory() {
+        return PayloadSerializer.toBytes(PayloadSerializer.inventory(snapshot.inventory));
+    }
+
+    @Benchmark
+    public byte[] equipment() {
+        return PayloadSerializer.toBytes(PayloadSerializer.equipment(snapshot.equipment));
+    }
+
+    @Benchmark
+    public byte[] inventoryJson() {
+        return PayloadSerializer.inventoryJson(snapshot.inventory);
+    }
+
+    @Benchmark
+    public byte[] equipmentJson() {
+        return PayloadSerializer.equipmentJson(snapshot.equipment);
+    }
+}
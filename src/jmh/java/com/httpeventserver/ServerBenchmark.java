@@ -0,0 +1,94 @@
+package com.httpeventserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end requests per second against the plugin's HttpServer, backed by a {@link StubClient}
+ * that is ticked every 600 ms like the real client. The state store lives in a temporary
+ * directory that is deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class ServerBenchmark {
+    @Param({"/events", "/inv", "/equip", "/bank", "/batch"})
+    public String endpoint;
+
+    private HttpEventServerPlugin plugin;
+    private ScheduledExecutorService ticker;
+    private Path stateDirectory;
+    private URL url;
+
+    @Setup
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        stateDirectory = Files.createTempDirectory("httpeventserver-benchmark");
+        StubClient stub = new StubClient();
+        plugin = new HttpEventServerPlugin();
+        plugin.client = stub.client;
+        plugin.stateDirectory = stateDirectory.toFile();
+        plugin.config = new HttpEventServerConfig() {
+            @Override
+            public String apiPort() {
+                return String.valueOf(port);
+            }
+        };
+        plugin.startUp();
+
+        ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> plugin.onGameTick(stub.tick()), 0, 600, TimeUnit.MILLISECONDS);
+        url = new URL("http://localhost:" + port + endpoint);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ticker.shutdownNow();
+        plugin.shutDown();
+        try (Stream<Path> paths = Files.walk(stateDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int request() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        int read = 0;
+        // Read the body to the end so the keep-alive connection is reused
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                read += n;
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,194 @@
+package com.httpeventserver;
+
+import net.runelite.api.Client;
+import net.runelite.api.InventoryID;
+import net.runelite.api.Item;
+import net.runelite.api.ItemContainer;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.Skill;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ItemContainerChanged;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+/**
+ * Headless stand-in for the RuneLite {@link Client}, answering the calls the plugin makes
+ * with a fixed logged-in player, a full inventory and a worn equipment set. Every other
+ * method returns the default value of its return type. The tick count and the containers only
+ * change through {@link #tick()} and {@link #change(InventoryID)}, which return the event the
+ * real client would post for them.
+ */
+final class StubClient {
+    private static final WorldPoint LOCATION = new WorldPoint(3222, 3218, 0);
+
+    final Client client;
+    // Written by the thread posting the events, read by the plugin and the server threads
+    private volatile int tick;
+    private volatile Item[] inventory = new Item[28];
+    private volatile Item[] equipment = new Item[14];
+    private int changes;
+
+    StubClient() {
+        for (int i = 0; i < inventory.length; i++) {
+            inventory[i] = new Item(995 + i, i + 1);
+        }
+        for (int i = 0; i < equipment.length; i++) {
+            equipment[i] = new Item(i % 3 == 0 ? -1 : 1000 + i, 1);
+        }
+        ItemContainer inventoryContainer = container(InventoryID.INVENTORY, () -> inventory);
+        ItemContainer equipmentContainer = container(InventoryID.EQUIPMENT, () -> equipment);
+        Player player = player();
+
+        client = proxy(Client.class, (name, args) -> {
+            switch (name) {
+                case "getLocalPlayer":
+                    return player;
+                case "getTickCount":
+                    return tick;
+                case "getItemContainer":
+                    if (args[0] == InventoryID.INVENTORY) {
+                        return inventoryContainer;
+                    }
+                    return args[0] == InventoryID.EQUIPMENT ? equipmentContainer : null;
+                case "getBoostedSkillLevel":
+                case "getRealSkillLevel":
+                    return args[0] == Skill.HITPOINTS ? 99 : 70;
+                case "getEnergy":
+                    return 10000;
+                case "getNpcs":
+                    return Collections.emptyList();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Advances the tick count, the returned event is to be posted right away.
+     */
+    GameTick tick() {
+        tick++;
+        return new GameTick();
+    }
+
+    /**
+     * Changes the quantity of one item of the inventory or the equipment, the next one every call.
+     *
+     * @return the event the client posts for the change
+     */
+    ItemContainerChanged change(InventoryID id) {
+        boolean inventoryChange = id == InventoryID.INVENTORY;
+        Item[] items = (inventoryChange ? inventory : equipment).clone();
+        int slot;
+        do {
+            slot = changes++ % items.length;
+        } while (items[slot].getId() < 0);
+        items[slot] = new Item(items[slot].getId(), items[slot].getQuantity() % 100 + 1);
+        if (inventoryChange) {
+            inventory = items;
+        } else {
+            equipment = items;
+        }
+        return new ItemContainerChanged(id.getId(), container(id, () -> items));
+    }
+
+    private static Player player() {
+        return proxy(Player.class, (name, args) -> {
+            switch (name) {
+                case "getWorldLocation":
+                    return LOCATION;
+                case "getName":
+                    return "Zezima";
+                case "getAnimation":
+                case "getPoseAnimation":
+                    return 808;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    static NPC npc(int index, int id, String name) {
+        return proxy(NPC.class, (method, args) -> {
+            switch (method) {
+                case "getIndex":
+                    return index;
+                case "getId":
+                    return id;
+                case "getName":
+                    return name;
+                case "getWorldLocation":
+                    return LOCATION;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static ItemContainer container(InventoryID id, Supplier<Item[]> items) {
+        return proxy(ItemContainer.class, (name, args) -> {
+            switch (name) {
+                case "getItems":
+                    return items.get().clone();
+                case "getId":
+                    return id.getId();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + "Stub";
+                }
+            }
+            Object value = answer.answer(method.getName(), args);
+            return value != null ? value : defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return type == void.class ? null : 0;
+    }
+}
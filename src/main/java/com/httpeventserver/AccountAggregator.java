@@ -0,0 +1,260 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * The latest /events body of every RuneLite client on this machine, for {@code /accounts}.
+ *
+ * The hosting client updates its own account every tick, its body is only serialized once it is
+ * requested. The other clients send theirs with an {@link AccountSender} over a loopback socket.
+ * A frame is the account name, the sender's start time, the snapshot version and tick and the
+ * serialized /events body, which is kept as it is and served with the same ETag as the sender's
+ * own /events.
+ *
+ * The port is not authenticated, any local process can connect and register names. A name belongs
+ * to the connection (or the hosting client) that registered it though, frames for it from anyone
+ * else are ignored until its owner disconnected or sent nothing for a few seconds.
+ */
+@Slf4j
+public class AccountAggregator {
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+    // Accounts that sent nothing for this long are listed as offline
+    private static final long ONLINE_MILLIS = 5_000;
+
+    // Owner of the hosting client's own account
+    private static final Object HOST = new Object();
+
+    private final ServerSocket serverSocket;
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    public AccountAggregator(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread thread = new Thread(this::accept, "http-account-aggregator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Updates an account, called on the client thread for the hosting client's own account.
+     *
+     * @param events the /events body, asked for at most once
+     */
+    public void update(String name, long startTime, long version, int tick, Supplier<byte[]> events) {
+        update(HOST, name, startTime, version, tick, events);
+    }
+
+    /**
+     * @return false when the name belongs to another owner that is still online
+     */
+    private boolean update(Object owner, String name, long startTime, long version, int tick, Supplier<byte[]> events) {
+        long now = System.currentTimeMillis();
+        boolean[] updated = new boolean[1];
+        // The function may be applied more than once, only the last result counts
+        accounts.compute(name, (key, account) -> {
+            updated[0] = account == null || account.owner == owner || !account.online(now);
+            return updated[0] ? new Account(owner, name, startTime, version, tick, events) : account;
+        });
+        return updated[0];
+    }
+
+    /**
+     * @return the latest /events of the account, null when it never sent any
+     */
+    public CachedResponse events(String name) {
+        Account account = accounts.get(name);
+        return account != null ? account.events.get() : null;
+    }
+
+    public JsonObject toJson() {
+        long now = System.currentTimeMillis();
+        JsonArray list = new JsonArray();
+        for (Account account : accounts.values()) {
+            JsonObject object = new JsonObject();
+            object.addProperty("name", account.name);
+            object.addProperty("version", account.version);
+            object.addProperty("tickCount", account.tick);
+            object.addProperty("updated", account.updated);
+            object.addProperty("online", account.online(now));
+            list.add(object);
+        }
+        JsonObject object = new JsonObject();
+        object.add("accounts", list);
+        return object;
+    }
+
+    /**
+     * Every client on this machine with /accounts, the events of one of them with /accounts/<name>/events.
+     */
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/accounts") || path.equals("/accounts/")) {
+            byte[] body = PayloadSerializer.toBytes(toJson());
+            exchange.getResponseHeaders().set("Content-Type", CachedResponse.JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return;
+        }
+        CachedResponse events = null;
+        if (path.startsWith("/accounts/") && path.endsWith("/events") && path.length() > "/accounts//events".length()) {
+            events = events(path.substring("/accounts/".length(), path.length() - "/events".length()));
+        }
+        if (events == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        events.send(exchange);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the account aggregator", e);
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close account connection", e);
+            }
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                Thread thread = new Thread(() -> read(socket), "http-account-aggregator-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Account aggregator stopped accepting clients", e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        String name = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (running) {
+                name = in.readUTF();
+                long startTime = in.readLong();
+                long version = in.readLong();
+                int tick = in.readInt();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_BODY_BYTES) {
+                    throw new IOException("Frame of " + length + " bytes from " + name);
+                }
+                byte[] events = new byte[length];
+                in.readFully(events);
+                if (!update(socket, name, startTime, version, tick, () -> events)) {
+                    log.debug("Ignoring account {} from {}, it belongs to another client", name, socket.getPort());
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Account connection {} closed", name, e);
+        } finally {
+            connections.remove(socket);
+            for (Account account : accounts.values()) {
+                if (account.owner == socket) {
+                    accounts.replace(account.name, account, account.disconnected());
+                }
+            }
+        }
+    }
+
+    static void write(DataOutputStream out, String name, long startTime, long version, int tick, byte[] events) throws IOException {
+        out.writeUTF(name);
+        out.writeLong(startTime);
+        out.writeLong(version);
+        out.writeInt(tick);
+        out.writeInt(events.length);
+        out.write(events);
+        out.flush();
+    }
+
+    private static <T> Supplier<T> memoize(Supplier<T> supplier) {
+        return new Supplier<T>() {
+            private Supplier<T> source = supplier;
+            private T value;
+
+            @Override
+            public synchronized T get() {
+                if (source != null) {
+                    value = source.get();
+                    source = null;
+                }
+                return value;
+            }
+        };
+    }
+
+    private static final class Account {
+        // The connection that sent the account, or HOST
+        private final Object owner;
+        private final String name;
+        private final long version;
+        private final int tick;
+        private final long updated;
+        private final boolean connected;
+        private final Supplier<CachedResponse> events;
+
+        private Account(Object owner, String name, long startTime, long version, int tick, Supplier<byte[]> events) {
+            this(owner, name, version, tick, System.currentTimeMillis(), true, memoize(() -> new CachedResponse(version,
+                    // The sender's own /events ETag, see ResponseCache
+                    "\"" + Long.toString(startTime, 36) + "-events-" + version + "\"", CachedResponse.JSON, events.get())));
+        }
+
+        private Account(Object owner, String name, long version, int tick, long updated, boolean connected,
+                        Supplier<CachedResponse> events) {
+            this.owner = owner;
+            this.name = name;
+            this.version = version;
+            this.tick = tick;
+            this.updated = updated;
+            this.connected = connected;
+            this.events = events;
+        }
+
+        private boolean online(long now) {
+            return connected && now - updated < ONLINE_MILLIS;
+        }
+
+        private Account disconnected() {
+            return new Account(owner, name, version, tick, updated, false, events);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.httpeventserver;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.function.Supplier;
+
+/**
+ * Sends the /events of this client to the {@link AccountAggregator} of the hosting client.
+ *
+ * Only the latest snapshot matters, so the client thread just replaces the pending frame and a
+ * background thread serializes and sends whatever is pending when it gets to it. When the host is
+ * not reachable frames are skipped and the connection is retried every few seconds.
+ */
+@Slf4j
+public class AccountSender {
+    private static final long RETRY_MILLIS = 5_000;
+    private static final int TIMEOUT_MILLIS = 5_000;
+
+    private final int port;
+    private final long startTime;
+    private final Thread thread;
+    // Guarded by this
+    private Frame pending;
+    private volatile boolean running = true;
+    // Only touched by the sender thread
+    private Socket socket;
+    private DataOutputStream out;
+    private long nextAttempt;
+
+    public AccountSender(int port, long startTime) {
+        this.port = port;
+        this.startTime = startTime;
+        thread = new Thread(this::run, "http-account-sender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Replaces the frame waiting to be sent, called on the client thread. The events are serialized
+     * on the sender thread, not at all when the frame is replaced or skipped before.
+     */
+    public synchronized void send(String name, long version, int tick, Supplier<byte[]> events) {
+        pending = new Frame(name, version, tick, events);
+        notifyAll();
+    }
+
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                Frame frame;
+                synchronized (this) {
+                    while (pending == null) {
+                        wait();
+                    }
+                    frame = pending;
+                    pending = null;
+                }
+                send(frame);
+            }
+        } catch (InterruptedException e) {
+            //Shut down
+        } finally {
+            close();
+        }
+    }
+
+    private void send(Frame frame) {
+        if (out == null) {
+            if (System.currentTimeMillis() < nextAttempt) {
+                return;
+            }
+            try {
+                socket = new Socket();
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                log.debug("Account aggregator on port {} is not reachable", port, e);
+                close();
+                nextAttempt = System.currentTimeMillis() + RETRY_MILLIS;
+                return;
+            }
+        }
+        byte[] events = frame.events.get();
+        if (events.length > AccountAggregator.MAX_BODY_BYTES) {
+            return;
+        }
+        try {
+            AccountAggregator.write(out, frame.name, startTime, frame.version, frame.tick, events);
+        } catch (IOException e) {
+            log.debug("Lost the account aggregator on port {}", port, e);
+            close();
+        }
+    }
+
+    private void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the account aggregator connection", e);
+            }
+        }
+        socket = null;
+        out = null;
+    }
+
+    private static final class Frame {
+        private final String name;
+        private final long version;
+        private final int tick;
+        private final Supplier<byte[]> events;
+
+        private Frame(String name, long version, int tick, Supplier<byte[]> events) {
+            this.name = name;
+            this.version = version;
+            this.tick = tick;
+            this.events = events;
+        }
+    }
+}
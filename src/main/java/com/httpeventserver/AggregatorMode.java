@@ -0,0 +1,21 @@
+package com.httpeventserver;
+
+public enum AggregatorMode
+{
+    OFF("Off"),
+    HOST("Host the accounts of every client"),
+    MEMBER("Send to the host");
+
+    private final String name;
+
+    AggregatorMode(String name)
+    {
+        this.name = name;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
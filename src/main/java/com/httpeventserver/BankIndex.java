@@ -0,0 +1,183 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.runelite.api.Item;
+
+import java.util.Arrays;
+
+/**
+ * Immutable id to quantity index of the bank.
+ *
+ * Ids are kept sorted so lookups are a binary search without any allocation. Every id that has
+ * ever been in the bank stays in the index with the version it last changed at (quantity 0 once
+ * it is gone), which is what allows answering diffs since any earlier version.
+ */
+public final class BankIndex {
+    public static final BankIndex EMPTY = new BankIndex(0, null, new int[0], new int[0], new long[0]);
+
+    public final long version;
+    // Bank slots in container order including placeholders, null until the bank has been seen
+    private final BankItem[] slots;
+    private final int[] ids;
+    private final int[] quantities;
+    private final long[] changedAt;
+
+    private BankIndex(long version, BankItem[] slots, int[] ids, int[] quantities, long[] changedAt) {
+        this.version = version;
+        this.slots = slots;
+        this.ids = ids;
+        this.quantities = quantities;
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * @return an index for the new bank contents, or this index when nothing changed
+     */
+    public BankIndex update(Item[] items) {
+        BankItem[] newSlots = new BankItem[items.length];
+        long[] packed = new long[items.length];
+        int count = 0;
+        for (int i = 0; i < items.length; i++) {
+            Item item = items[i];
+            newSlots[i] = new BankItem(item.getId(), item.getQuantity());
+            if (item.getId() > 0 && item.getQuantity() > 0) {
+                packed[count++] = ((long) item.getId() << 32) | item.getQuantity();
+            }
+        }
+        Arrays.sort(packed, 0, count);
+
+        long newVersion = version + 1;
+        int[] mergedIds = new int[ids.length + count];
+        int[] mergedQuantities = new int[mergedIds.length];
+        long[] mergedChangedAt = new long[mergedIds.length];
+        boolean changed = false;
+        int merged = 0;
+        int o = 0;
+        int n = 0;
+        while (o < ids.length || n < count) {
+            int newId = n < count ? (int) (packed[n] >>> 32) : Integer.MAX_VALUE;
+            int id;
+            int quantity = 0;
+            if (n < count && (o >= ids.length || newId <= ids[o])) {
+                id = newId;
+                // The same item can occupy more than one slot
+                while (n < count && (int) (packed[n] >>> 32) == id) {
+                    quantity += (int) packed[n++];
+                }
+            } else {
+                id = ids[o];
+            }
+
+            long changedVersion = newVersion;
+            if (o < ids.length && ids[o] == id) {
+                if (quantities[o] == quantity) {
+                    changedVersion = changedAt[o];
+                }
+                o++;
+            }
+            changed |= changedVersion == newVersion;
+
+            mergedIds[merged] = id;
+            mergedQuantities[merged] = quantity;
+            mergedChangedAt[merged] = changedVersion;
+            merged++;
+        }
+
+        if (!changed && slots != null && sameSlots(slots, newSlots)) {
+            return this;
+        }
+        return new BankIndex(newVersion, newSlots,
+                Arrays.copyOf(mergedIds, merged),
+                Arrays.copyOf(mergedQuantities, merged),
+                Arrays.copyOf(mergedChangedAt, merged));
+    }
+
+    /**
+     * @return an index where the bank is not known and every item is gone, for when the bank of
+     * another account is about to be seen
+     */
+    public BankIndex cleared() {
+        long newVersion = version + 1;
+        long[] clearedChangedAt = changedAt.clone();
+        boolean changed = slots != null;
+        for (int i = 0; i < ids.length; i++) {
+            if (quantities[i] != 0) {
+                clearedChangedAt[i] = newVersion;
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return this;
+        }
+        return new BankIndex(newVersion, null, ids, new int[ids.length], clearedChangedAt);
+    }
+
+    private static boolean sameSlots(BankItem[] a, BankItem[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].getId() != b[i].getId() || a[i].getQuantity() != b[i].getQuantity()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isKnown() {
+        return slots != null;
+    }
+
+    public int quantity(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? quantities[index] : 0;
+    }
+
+    public BankItem[] slots() {
+        return slots != null ? slots : new BankItem[0];
+    }
+
+    public JsonObject lookup(int id) {
+        JsonObject object = new JsonObject();
+        object.addProperty("version", version);
+        object.addProperty("id", id);
+        object.addProperty("quantity", quantity(id));
+        return object;
+    }
+
+    public JsonObject lookup(int[] lookupIds) {
+        JsonArray items = new JsonArray();
+        for (int id : lookupIds) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("quantity", quantity(id));
+            items.add(item);
+        }
+        JsonObject object = new JsonObject();
+        object.addProperty("version", version);
+        object.add("items", items);
+        return object;
+    }
+
+    /**
+     * @return the ids whose quantity changed after the given version, removed items have quantity 0
+     */
+    public JsonObject changesSince(long since) {
+        boolean full = since < 0 || since > version;
+        JsonArray changes = new JsonArray();
+        for (int i = 0; i < ids.length; i++) {
+            if (full ? quantities[i] > 0 : changedAt[i] > since) {
+                JsonObject item = new JsonObject();
+                item.addProperty("id", ids[i]);
+                item.addProperty("quantity", quantities[i]);
+                changes.add(item);
+            }
+        }
+        JsonObject object = new JsonObject();
+        object.addProperty("version", version);
+        object.addProperty("full", full);
+        object.add("changes", changes);
+        return object;
+    }
+}
@@ -0,0 +1,56 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A fully serialized response body together with the version it was built from.
+ */
+public final class CachedResponse {
+    public static final String JSON = "application/json; charset=utf-8";
+
+    public final long version;
+    public final String etag;
+    public final String contentType;
+    public final byte[] body;
+
+    public CachedResponse(long version, String etag, String contentType, byte[] body) {
+        this.version = version;
+        this.etag = etag;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void send(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring of the most recent chat messages, numbered with a sequence that starts at 1.
+ *
+ * Only the client thread adds messages. A message is stored before its sequence number is
+ * published, and readers verify the sequence of every slot they read, so reading needs no
+ * locking and never returns a message that was overwritten in the meantime.
+ */
+public class ChatLog {
+    private final AtomicReferenceArray<Message> ring;
+    private volatile long last;
+
+    public ChatLog(int capacity) {
+        ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    public Message add(int tick, String type, String name, String text) {
+        long sequence = last + 1;
+        Message message = new Message(sequence, tick, type, name, text);
+        ring.set(slot(sequence), message);
+        last = sequence;
+        return message;
+    }
+
+    /**
+     * @param types only messages of these types are returned, null for all types
+     * @return the retained messages with a sequence after the given one, oldest first, and the
+     * sequence to ask for messages after next time
+     */
+    public JsonObject after(long after, Set<String> types, int limit) {
+        long end = last;
+        long first = Math.max(Math.max(after, 0) + 1, end - ring.length() + 1);
+
+        JsonArray messages = new JsonArray();
+        long oldest = end + 1;
+        // Last sequence that was looked at, the one to continue after
+        long next = end;
+        for (long sequence = first; sequence <= end; sequence++) {
+            Message message = ring.get(slot(sequence));
+            if (message == null || message.sequence != sequence) {
+                // Overwritten while reading
+                continue;
+            }
+            oldest = Math.min(oldest, sequence);
+            if (types == null || types.contains(message.type)) {
+                messages.add(message.toJson());
+                if (messages.size() == limit) {
+                    next = sequence;
+                    break;
+                }
+            }
+        }
+
+        JsonObject object = new JsonObject();
+        object.addProperty("last", next);
+        // Messages after the requested sequence that are no longer retained
+        object.addProperty("missed", Math.max(0, Math.min(oldest, end + 1) - Math.max(after, 0) - 1));
+        object.add("messages", messages);
+        return object;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length());
+    }
+
+    public static final class Message {
+        public final long sequence;
+        public final int tick;
+        public final String type;
+        public final String name;
+        public final String text;
+
+        private Message(long sequence, int tick, String type, String name, String text) {
+            this.sequence = sequence;
+            this.tick = tick;
+            this.type = type;
+            this.name = name;
+            this.text = text;
+        }
+
+        public JsonObject toJson() {
+            JsonObject object = new JsonObject();
+            object.addProperty("seq", sequence);
+            object.addProperty("tick", tick);
+            object.addProperty("type", type);
+            object.addProperty("name", name);
+            object.addProperty("message", text);
+            return object;
+        }
+    }
+}
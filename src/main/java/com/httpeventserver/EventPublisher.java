@@ -0,0 +1,256 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pushes events to a configured endpoint instead of waiting to be polled.
+ *
+ * Events are queued without blocking and sent in batches of up to batchSize events, or whatever
+ * arrived within batchMillis of the first one, by a single background thread. Their data is only
+ * serialized by that thread, never by the client thread that queued them. A batch is a JSON array,
+ * POSTed to an http:// target or written as one line to a unix: socket. Failed batches are retried
+ * a few times and then dropped, when the queue is full the oldest events are dropped.
+ */
+@Slf4j
+public class EventPublisher {
+    private static final int QUEUE_LIMIT = 10_000;
+    private static final int ATTEMPTS = 3;
+    private static final long RETRY_MILLIS = 500;
+    private static final int TIMEOUT_MILLIS = 5_000;
+
+    private final String target;
+    private final int batchSize;
+    private final int batchMillis;
+    private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_LIMIT);
+    private final Thread thread;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+    // Open connection of a unix: target, only touched by the publisher thread
+    private SocketChannel socket;
+
+    private EventPublisher(String target, int batchSize, int batchMillis) {
+        this.target = target;
+        this.batchSize = batchSize;
+        this.batchMillis = batchMillis;
+        thread = new Thread(this::run, "http-event-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param target http://host:port/path or unix:/path/to/socket, blank to publish nothing
+     * @return null when publishing is disabled or the target is not supported
+     */
+    public static EventPublisher create(String target, int batchSize, int batchMillis) {
+        target = target == null ? "" : target.trim();
+        if (target.isEmpty()) {
+            return null;
+        }
+        if (!target.startsWith("http://") && !target.startsWith("https://") && !target.startsWith("unix:")) {
+            log.warn("Not publishing events, unsupported target {}", target);
+            return null;
+        }
+        if (target.startsWith("unix:") && unixFamily() == null) {
+            log.warn("Not publishing events, unix domain sockets need Java 16 or later");
+            return null;
+        }
+        return new EventPublisher(target, Math.max(1, batchSize), Math.max(0, batchMillis));
+    }
+
+    /**
+     * Queues an event without blocking, called on the client thread.
+     *
+     * @param data built by the publisher thread, must only read state that no longer changes
+     */
+    public void publish(String type, int tick, Supplier<JsonElement> data) {
+        Event event = new Event(type, tick, System.currentTimeMillis(), data);
+        published.incrementAndGet();
+        while (!queue.offer(event)) {
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    public JsonObject toJson() {
+        JsonObject object = new JsonObject();
+        object.addProperty("target", target);
+        object.addProperty("published", published.get());
+        object.addProperty("sent", sent.get());
+        object.addProperty("dropped", dropped.get());
+        object.addProperty("queued", queue.size());
+        return object;
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+                while (batch.size() < batchSize) {
+                    Event event = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (event == null) {
+                        break;
+                    }
+                    batch.add(event);
+                }
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            //Shut down
+        } finally {
+            closeSocket();
+        }
+    }
+
+    private void send(List<Event> batch) throws InterruptedException {
+        JsonArray array = new JsonArray();
+        for (Event event : batch) {
+            array.add(event.toJson());
+        }
+        byte[] body = PayloadSerializer.toBytes(array);
+        for (int attempt = 1; attempt <= ATTEMPTS; attempt++) {
+            try {
+                if (target.startsWith("unix:")) {
+                    writeSocket(body);
+                } else {
+                    post(body);
+                }
+                sent.addAndGet(batch.size());
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.debug("Publishing {} events to {} failed, attempt {}", batch.size(), target, attempt, e);
+                closeSocket();
+                if (attempt < ATTEMPTS) {
+                    Thread.sleep(RETRY_MILLIS << (attempt - 1));
+                }
+            }
+        }
+        dropped.addAndGet(batch.size());
+    }
+
+    private void post(byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(target).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", CachedResponse.JSON);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        int code = connection.getResponseCode();
+        // Closing the response lets the connection be reused
+        try {
+            connection.getInputStream().close();
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+        if (code < 200 || code >= 300) {
+            throw new IOException("HTTP " + code);
+        }
+    }
+
+    private void writeSocket(byte[] body) throws IOException {
+        if (socket == null) {
+            socket = openUnixSocket(target.substring("unix:".length()));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(body.length + 1);
+        buffer.put(body).put((byte) '\n').flip();
+        while (buffer.hasRemaining()) {
+            socket.write(buffer);
+        }
+    }
+
+    private void closeSocket() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close {}", target, e);
+            }
+            socket = null;
+        }
+    }
+
+    private static ProtocolFamily unixFamily() {
+        for (StandardProtocolFamily family : StandardProtocolFamily.values()) {
+            if (family.name().equals("UNIX")) {
+                return family;
+            }
+        }
+        return null;
+    }
+
+    private static SocketChannel openUnixSocket(String path) throws IOException {
+        //Unix domain sockets only exist since Java 16, the plugin is built for Java 8
+        try {
+            SocketChannel channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, unixFamily());
+            SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class).invoke(null, path);
+            try {
+                channel.connect(address);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to open unix domain socket " + path, e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private static final class Event {
+        private final String type;
+        private final int tick;
+        private final long time;
+        private final Supplier<JsonElement> data;
+
+        private Event(String type, int tick, long time, Supplier<JsonElement> data) {
+            this.type = type;
+            this.tick = tick;
+            this.time = time;
+            this.data = data;
+        }
+
+        private JsonObject toJson() {
+            JsonObject event = new JsonObject();
+            event.addProperty("type", type);
+            event.addProperty("tick", tick);
+            event.addProperty("time", time);
+            event.add("data", data.get());
+            return event;
+        }
+    }
+}
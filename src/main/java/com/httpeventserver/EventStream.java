@@ -0,0 +1,248 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Server-Sent Events fan-out for the /stream endpoint.
+ *
+ * The game thread only hands a payload supplier to the dispatcher thread, which serializes the
+ * frame once and offers it to every subscriber. Each subscriber has a bounded queue drained by its
+ * own writer, so a slow consumer only ever loses its own frames. Writers block on their socket on
+ * either transport, so the number of subscribers and with it the writer threads is capped.
+ */
+@Slf4j
+public class EventStream {
+    public static final String TICK = "tick";
+    public static final String CHAT = "chat";
+    public static final String LOOT = "loot";
+    public static final Set<String> TOPICS = new HashSet<>(Arrays.asList(TICK, CHAT, LOOT));
+
+    public static final int MAX_SUBSCRIBERS = 64;
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long KEEP_ALIVE_MILLIS = 15_000;
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maxSubscribers;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> daemon(r, "http-event-stream"));
+    private final ThreadPoolExecutor writers;
+
+    public EventStream() {
+        this(MAX_SUBSCRIBERS);
+    }
+
+    public EventStream(int maxSubscribers) {
+        this.maxSubscribers = maxSubscribers;
+        // A writer that is still finishing for a closed subscriber makes a new one wait in the queue
+        writers = new ThreadPoolExecutor(maxSubscribers, maxSubscribers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> daemon(r, "http-event-stream-writer"));
+        writers.allowCoreThreadTimeOut(true);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Publishes a frame to all subscribers of the topic. Never blocks, the payload is only
+     * serialized when somebody is listening.
+     */
+    public void publish(String topic, long id, Supplier<byte[]> payload) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        dispatcher.execute(() -> {
+            byte[] frame;
+            try {
+                frame = frame(topic, id, payload.get());
+            } catch (Exception e) {
+                log.warn("Failed to serialize {} frame", topic, e);
+                return;
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.topics.contains(topic)) {
+                    subscriber.offer(topic, frame);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return false when there are too many subscribers already, nothing was sent then
+     */
+    public boolean subscribe(HttpExchange exchange, Set<String> topics) throws IOException {
+        Subscriber subscriber = new Subscriber(exchange, topics);
+        synchronized (this) {
+            if (subscribers.size() >= maxSubscribers) {
+                return false;
+            }
+            subscribers.add(subscriber);
+        }
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+        } catch (IOException e) {
+            subscriber.close();
+            throw e;
+        }
+        writers.execute(subscriber::drain);
+        return true;
+    }
+
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        writers.shutdownNow();
+    }
+
+    static byte[] frame(String topic, long id, byte[] data) {
+        byte[] header = ("event: " + topic + "\nid: " + id + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[header.length + data.length + 2];
+        System.arraycopy(header, 0, frame, 0, header.length);
+        System.arraycopy(data, 0, frame, header.length, data.length);
+        frame[frame.length - 2] = '\n';
+        frame[frame.length - 1] = '\n';
+        return frame;
+    }
+
+    private final class Subscriber {
+        private final HttpExchange exchange;
+        private final Set<String> topics;
+        private final Backlog backlog = new Backlog(QUEUE_CAPACITY);
+
+        private Subscriber(HttpExchange exchange, Set<String> topics) {
+            this.exchange = exchange;
+            this.topics = topics;
+        }
+
+        private void offer(String topic, byte[] data) {
+            backlog.offer(topic, data);
+        }
+
+        private void drain() {
+            try (OutputStream out = exchange.getResponseBody()) {
+                byte[] frame;
+                while ((frame = backlog.take(KEEP_ALIVE_MILLIS)) != null) {
+                    out.write(frame);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                log.debug("Stream subscriber {} disconnected", exchange.getRemoteAddress());
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            long dropped = backlog.close();
+            if (dropped < 0) {
+                return;
+            }
+            subscribers.remove(this);
+            if (dropped > 0) {
+                log.debug("Stream subscriber {} dropped {} frames", exchange.getRemoteAddress(), dropped);
+            }
+            exchange.close();
+        }
+    }
+
+    /**
+     * Frames waiting for one subscriber. A new tick replaces a tick that was not sent yet, and the
+     * oldest frame is dropped when the backlog is full.
+     */
+    static final class Backlog {
+        private final int capacity;
+        private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+        private boolean closed;
+        private long dropped;
+
+        Backlog(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void offer(String topic, byte[] data) {
+            if (closed) {
+                return;
+            }
+            if (TICK.equals(topic)) {
+                // Only the latest tick matters, replace a tick that is still waiting to be sent
+                for (Iterator<Frame> it = queue.iterator(); it.hasNext(); ) {
+                    if (TICK.equals(it.next().topic)) {
+                        it.remove();
+                        dropped++;
+                    }
+                }
+            }
+            if (queue.size() >= capacity) {
+                queue.pollFirst();
+                dropped++;
+            }
+            queue.addLast(new Frame(topic, data));
+            notifyAll();
+        }
+
+        /**
+         * @return the next frame, a keep-alive comment when none came in time, null once closed
+         */
+        synchronized byte[] take(long keepAliveMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + keepAliveMillis;
+            while (queue.isEmpty() && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return KEEP_ALIVE;
+                }
+                wait(remaining);
+            }
+            return closed ? null : queue.pollFirst().data;
+        }
+
+        /**
+         * @return the number of dropped frames, -1 when it was closed already
+         */
+        synchronized long close() {
+            if (closed) {
+                return -1;
+            }
+            closed = true;
+            queue.clear();
+            notifyAll();
+            return dropped;
+        }
+
+        synchronized long dropped() {
+            return dropped;
+        }
+    }
+
+    private static final class Frame {
+        private final String topic;
+        private final byte[] data;
+
+        private Frame(String topic, byte[] data) {
+            this.topic = topic;
+            this.data = data;
+        }
+    }
+}
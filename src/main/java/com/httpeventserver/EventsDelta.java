@@ -0,0 +1,52 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Builds the /events?since=&lt;version&gt; payload: only the fields that differ between two
+ * snapshots, the loot entries that were added and the number of loot entries that expired.
+ */
+public final class EventsDelta {
+    private EventsDelta() {
+    }
+
+    public static JsonObject build(GameStateSnapshot from, GameStateSnapshot to) {
+        JsonObject before = EventsProjection.WITHOUT_LOOT.apply(from);
+        JsonObject after = EventsProjection.WITHOUT_LOOT.apply(to);
+
+        JsonObject delta = diff(before, after);
+        delta.addProperty("version", to.version);
+        delta.addProperty("since", from.version);
+        delta.addProperty("full", false);
+
+        delta.add("lootAdded", to.loot.addedSince(from.loot));
+        delta.addProperty("lootRemoved", to.loot.removedSince(from.loot));
+        return delta;
+    }
+
+    public static JsonObject full(GameStateSnapshot state) {
+        JsonObject object = PayloadSerializer.events(state);
+        object.addProperty("full", true);
+        return object;
+    }
+
+    private static JsonObject diff(JsonObject before, JsonObject after) {
+        JsonObject changes = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : after.entrySet()) {
+            JsonElement now = entry.getValue();
+            JsonElement old = before.get(entry.getKey());
+            if (now.isJsonObject() && old != null && old.isJsonObject()) {
+                JsonObject nested = diff(old.getAsJsonObject(), now.getAsJsonObject());
+                if (nested.size() > 0) {
+                    changes.add(entry.getKey(), nested);
+                }
+            } else if (!now.equals(old)) {
+                changes.add(entry.getKey(), now);
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,217 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Compiled selection of /events fields, e.g. {@code fields=playerObject.currentHealth,npcObject,tickCount}.
+ *
+ * The /events payload is described once as a tree of fields with their extractors. A projection
+ * is that tree pruned to the selected paths, so applying it only reads and writes what was asked
+ * for. Projections are compiled once per distinct field list and reused.
+ */
+public final class EventsProjection {
+    private static final int MAX_CACHED_PLANS = 128;
+
+    private static final Field SCHEMA = object(null,
+            value("version", s -> s.version),
+            value("latestMsg", s -> s.latestMsg),
+            value("gameCycle", s -> s.gameCycle),
+            value("tickCount", s -> s.tickCount),
+            value("latestMsgType", s -> s.latestMsgType),
+            value("msgTick", s -> s.msgTick),
+            value("bankOpen", s -> s.bankOpen),
+            value("shopOpen", s -> s.shopOpen),
+            value("trawlerRewardOpen", s -> s.trawlerRewardOpen),
+            object("camera",
+                    value("yaw", s -> s.camera.yaw),
+                    value("pitch", s -> s.camera.pitch),
+                    value("x", s -> s.camera.x),
+                    value("y", s -> s.camera.y),
+                    value("z", s -> s.camera.z)),
+            object("playerObject",
+                    value("animation", s -> s.player.animation),
+                    value("animationPose", s -> s.player.animationPose),
+                    value("interactingCode", s -> s.player.interactingCode),
+                    value("runEnergy", s -> s.player.runEnergy),
+                    value("specialAttackEnergy", s -> s.player.specialAttackEnergy),
+                    value("currentPrayer", s -> s.player.currentPrayer),
+                    value("maxPrayer", s -> s.player.maxPrayer),
+                    value("currentHealth", s -> s.player.currentHealth),
+                    value("maxHealth", s -> s.player.maxHealth),
+                    coordinates("playerCoordinates", s -> s.player.coordinates)),
+            object("npcObject",
+                    value("name", s -> s.npc.name),
+                    value("id", s -> s.npc.id),
+                    value("combatLevel ", s -> s.npc.combatLevel),
+                    value("currentHealth ", s -> s.npc.currentHealth),
+                    value("maxHealth ", s -> s.npc.maxHealth),
+                    coordinates("npcCoordinates", s -> s.npc.coordinates)),
+            element("lootArray", s -> s.loot.toJson()));
+
+    public static final EventsProjection ALL = new EventsProjection("", SCHEMA);
+    // Everything except the loot, which deltas report separately
+    public static final EventsProjection WITHOUT_LOOT = compile("version,latestMsg,gameCycle,tickCount,"
+            + "latestMsgType,msgTick,bankOpen,shopOpen,trawlerRewardOpen,camera,playerObject,npcObject");
+
+    private static final Map<String, EventsProjection> PLANS = new ConcurrentHashMap<>();
+
+    // Normalized field list, equal for equal projections
+    public final String key;
+    private final Field root;
+
+    private EventsProjection(String key, Field root) {
+        this.key = key;
+        this.root = root;
+    }
+
+    /**
+     * @return the projection for a comma separated list of dotted field paths
+     * @throws IllegalArgumentException when a path does not name a field
+     */
+    public static EventsProjection forFields(String fields) {
+        EventsProjection plan = PLANS.get(fields);
+        if (plan == null) {
+            plan = compile(fields);
+            if (PLANS.size() < MAX_CACHED_PLANS) {
+                PLANS.put(fields, plan);
+            }
+        }
+        return plan;
+    }
+
+    private static EventsProjection compile(String fields) {
+        List<String[]> paths = new ArrayList<>();
+        for (String path : fields.split(",")) {
+            path = path.trim();
+            if (!path.isEmpty()) {
+                paths.add(path.split("\\."));
+            }
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No fields selected");
+        }
+        for (String[] path : paths) {
+            Field field = SCHEMA;
+            for (String name : path) {
+                field = field.child(name);
+                if (field == null) {
+                    throw new IllegalArgumentException("Unknown field " + String.join(".", path));
+                }
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        Field root = prune(SCHEMA, paths, 0, "", key);
+        return new EventsProjection(key.toString(), root);
+    }
+
+    private static Field prune(Field field, List<String[]> paths, int depth, String prefix, StringBuilder key) {
+        List<Field> children = new ArrayList<>();
+        for (Field child : field.children) {
+            boolean whole = false;
+            List<String[]> below = new ArrayList<>();
+            for (String[] path : paths) {
+                if (child.matches(path[depth])) {
+                    if (path.length == depth + 1) {
+                        whole = true;
+                    } else {
+                        below.add(path);
+                    }
+                }
+            }
+
+            String name = prefix + child.name.trim();
+            if (whole) {
+                children.add(child);
+                key.append(key.length() == 0 ? "" : ",").append(name);
+            } else if (!below.isEmpty()) {
+                children.add(prune(child, below, depth + 1, name + ".", key));
+            }
+        }
+        return new Field(field.name, null, children);
+    }
+
+    public JsonObject apply(GameStateSnapshot state) {
+        return root.object(state);
+    }
+
+    private static Field value(String name, Function<GameStateSnapshot, Object> extractor) {
+        return new Field(name, s -> {
+            Object value = extractor.apply(s);
+            if (value == null) {
+                return JsonNull.INSTANCE;
+            }
+            if (value instanceof Number) {
+                return new JsonPrimitive((Number) value);
+            }
+            if (value instanceof Boolean) {
+                return new JsonPrimitive((Boolean) value);
+            }
+            return new JsonPrimitive(value.toString());
+        }, Collections.emptyList());
+    }
+
+    private static Field element(String name, Function<GameStateSnapshot, JsonElement> extractor) {
+        return new Field(name, extractor, Collections.emptyList());
+    }
+
+    private static Field object(String name, Field... children) {
+        return new Field(name, null, Arrays.asList(children));
+    }
+
+    private static Field coordinates(String name, Function<GameStateSnapshot, GameStateSnapshot.Coordinates> coordinates) {
+        return object(name,
+                value("x", s -> coordinates.apply(s).x),
+                value("y", s -> coordinates.apply(s).y),
+                value("plane", s -> coordinates.apply(s).plane),
+                value("regionID", s -> coordinates.apply(s).regionID),
+                value("regionX", s -> coordinates.apply(s).regionX),
+                value("regionY", s -> coordinates.apply(s).regionY));
+    }
+
+    private static final class Field {
+        private final String name;
+        // Null for objects, which are made of their children
+        private final Function<GameStateSnapshot, JsonElement> extractor;
+        private final List<Field> children;
+
+        private Field(String name, Function<GameStateSnapshot, JsonElement> extractor, List<Field> children) {
+            this.name = name;
+            this.extractor = extractor;
+            this.children = children;
+        }
+
+        // Some of the original keys have a trailing space, they can be selected without it
+        private boolean matches(String selected) {
+            return name.equals(selected) || name.trim().equals(selected);
+        }
+
+        private Field child(String selected) {
+            for (Field child : children) {
+                if (child.matches(selected)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private JsonObject object(GameStateSnapshot state) {
+            JsonObject object = new JsonObject();
+            for (Field child : children) {
+                object.add(child.name, child.extractor != null ? child.extractor.apply(state) : child.object(state));
+            }
+            return object;
+        }
+    }
+}
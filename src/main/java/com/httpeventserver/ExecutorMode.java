@@ -0,0 +1,21 @@
+package com.httpeventserver;
+
+public enum ExecutorMode
+{
+    SINGLE_THREAD("Single thread"),
+    BOUNDED_POOL("Bounded pool"),
+    VIRTUAL_THREADS("Virtual threads");
+
+    private final String name;
+
+    ExecutorMode(String name)
+    {
+        this.name = name;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,158 @@
+package com.httpeventserver;
+
+import net.runelite.api.Item;
+
+/**
+ * Immutable copy of everything the HTTP endpoints serve. A new snapshot is captured on the
+ * client thread every game tick and published through a single volatile reference, so request
+ * handlers never have to call into the client.
+ */
+public final class GameStateSnapshot {
+    public static final GameStateSnapshot EMPTY = initial(BankIndex.EMPTY, LootLog.View.EMPTY);
+
+    // Incremented for every captured snapshot
+    public final long version;
+    // Only incremented when the items of the container actually changed
+    public final long inventoryVersion;
+    public final long equipmentVersion;
+    public final int tickCount;
+    public final int gameCycle;
+    public final String latestMsg;
+    public final String latestMsgType;
+    public final int msgTick;
+    public final Boolean bankOpen;
+    public final Boolean shopOpen;
+    public final Boolean trawlerRewardOpen;
+    public final PlayerState player;
+    public final NpcState npc;
+    public final CameraState camera;
+    public final Item[] inventory;
+    public final Item[] equipment;
+    public final BankIndex bank;
+    public final LootLog.View loot;
+    public final NpcTracker.View npcs;
+
+    public GameStateSnapshot(long version, long inventoryVersion, long equipmentVersion,
+                             int tickCount, int gameCycle, String latestMsg, String latestMsgType, int msgTick,
+                             Boolean bankOpen, Boolean shopOpen, Boolean trawlerRewardOpen,
+                             PlayerState player, NpcState npc, CameraState camera,
+                             Item[] inventory, Item[] equipment, BankIndex bank, LootLog.View loot,
+                             NpcTracker.View npcs) {
+        this.version = version;
+        this.inventoryVersion = inventoryVersion;
+        this.equipmentVersion = equipmentVersion;
+        this.tickCount = tickCount;
+        this.gameCycle = gameCycle;
+        this.latestMsg = latestMsg;
+        this.latestMsgType = latestMsgType;
+        this.msgTick = msgTick;
+        this.bankOpen = bankOpen;
+        this.shopOpen = shopOpen;
+        this.trawlerRewardOpen = trawlerRewardOpen;
+        this.player = player;
+        this.npc = npc;
+        this.camera = camera;
+        this.inventory = inventory;
+        this.equipment = equipment;
+        this.bank = bank;
+        this.loot = loot;
+        this.npcs = npcs;
+    }
+
+    /**
+     * @return the snapshot served before the first tick, holding only the restored bank and loot
+     */
+    public static GameStateSnapshot initial(BankIndex bank, LootLog.View loot) {
+        return new GameStateSnapshot(0, 0, 0, 0, 0, null, null, 0,
+                null, null, null, PlayerState.NONE, NpcState.NONE, CameraState.NONE,
+                null, null, bank, loot, NpcTracker.View.EMPTY);
+    }
+
+    public static final class Coordinates {
+        public static final Coordinates NONE = new Coordinates(0, 0, 0, 0, 0, 0);
+
+        public final int x;
+        public final int y;
+        public final int plane;
+        public final int regionID;
+        public final int regionX;
+        public final int regionY;
+
+        public Coordinates(int x, int y, int plane, int regionID, int regionX, int regionY) {
+            this.x = x;
+            this.y = y;
+            this.plane = plane;
+            this.regionID = regionID;
+            this.regionX = regionX;
+            this.regionY = regionY;
+        }
+    }
+
+    public static final class PlayerState {
+        public static final PlayerState NONE = new PlayerState(0, 0, "null", 0, 0, 0, 0, 0, 0, Coordinates.NONE);
+
+        public final int animation;
+        public final int animationPose;
+        public final String interactingCode;
+        public final int runEnergy;
+        public final int specialAttackEnergy;
+        public final int currentPrayer;
+        public final int maxPrayer;
+        public final int currentHealth;
+        public final int maxHealth;
+        public final Coordinates coordinates;
+
+        public PlayerState(int animation, int animationPose, String interactingCode, int runEnergy,
+                           int specialAttackEnergy, int currentPrayer, int maxPrayer, int currentHealth,
+                           int maxHealth, Coordinates coordinates) {
+            this.animation = animation;
+            this.animationPose = animationPose;
+            this.interactingCode = interactingCode;
+            this.runEnergy = runEnergy;
+            this.specialAttackEnergy = specialAttackEnergy;
+            this.currentPrayer = currentPrayer;
+            this.maxPrayer = maxPrayer;
+            this.currentHealth = currentHealth;
+            this.maxHealth = maxHealth;
+            this.coordinates = coordinates;
+        }
+    }
+
+    public static final class NpcState {
+        public static final NpcState NONE = new NpcState("", 0, 0, 0, 0, Coordinates.NONE);
+
+        public final String name;
+        public final int id;
+        public final int combatLevel;
+        public final int currentHealth;
+        public final int maxHealth;
+        public final Coordinates coordinates;
+
+        public NpcState(String name, int id, int combatLevel, int currentHealth, int maxHealth, Coordinates coordinates) {
+            this.name = name;
+            this.id = id;
+            this.combatLevel = combatLevel;
+            this.currentHealth = currentHealth;
+            this.maxHealth = maxHealth;
+            this.coordinates = coordinates;
+        }
+    }
+
+    public static final class CameraState {
+        public static final CameraState NONE = new CameraState(0, 0, 0, 0, 0);
+
+        public final int yaw;
+        public final int pitch;
+        public final int x;
+        public final int y;
+        public final int z;
+
+        public CameraState(int yaw, int pitch, int x, int y, int z) {
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
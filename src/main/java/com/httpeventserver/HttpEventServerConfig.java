@@ -3,6 +3,7 @@ package com.httpeventserver;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
 
 @ConfigGroup(HttpEventServerConfig.GROUP)
 public interface HttpEventServerConfig extends Config
@@ -19,4 +20,150 @@ public interface HttpEventServerConfig extends Config
     {
         return "5050";
     }
+
+    @ConfigItem(
+            position = 2,
+            keyName = "executorMode",
+            name = "Request executor",
+            description = "How requests are executed. Virtual threads fall back to a bounded pool on JVMs without them"
+    )
+    default ExecutorMode executorMode()
+    {
+        return ExecutorMode.BOUNDED_POOL;
+    }
+
+    @Range(
+            min = 1,
+            max = 64
+    )
+    @ConfigItem(
+            position = 3,
+            keyName = "workerThreads",
+            name = "Worker threads",
+            description = "Number of requests handled at the same time"
+    )
+    default int workerThreads()
+    {
+        return 4;
+    }
+
+    @Range(
+            max = 10000
+    )
+    @ConfigItem(
+            position = 4,
+            keyName = "queueLimit",
+            name = "Request queue limit",
+            description = "Requests waiting for a worker before the server answers with 503"
+    )
+    default int queueLimit()
+    {
+        return 64;
+    }
+
+    @ConfigItem(
+            position = 5,
+            keyName = "transport",
+            name = "Transport",
+            description = "Server implementation. The NIO selector serves many open connections from a single thread"
+    )
+    default Transport transport()
+    {
+        return Transport.JDK_HTTP_SERVER;
+    }
+
+    @Range(
+            max = 4096
+    )
+    @ConfigItem(
+            position = 6,
+            keyName = "backlog",
+            name = "Connection backlog",
+            description = "Connections waiting to be accepted, 0 for the system default"
+    )
+    default int backlog()
+    {
+        return 0;
+    }
+
+    @Range(
+            min = 1,
+            max = 10000
+    )
+    @ConfigItem(
+            position = 7,
+            keyName = "maxConnections",
+            name = "Connection limit",
+            description = "Open connections the NIO transport accepts, further connections are closed straight away"
+    )
+    default int maxConnections()
+    {
+        return 512;
+    }
+
+    @ConfigItem(
+            position = 8,
+            keyName = "publishTarget",
+            name = "Publish events to",
+            description = "Pushes loot, chat and container changes to http://localhost:<port>/<path> or unix:/path/to/socket, empty to only serve them"
+    )
+    default String publishTarget()
+    {
+        return "";
+    }
+
+    @Range(
+            min = 1,
+            max = 1000
+    )
+    @ConfigItem(
+            position = 9,
+            keyName = "publishBatchSize",
+            name = "Publish batch size",
+            description = "Events sent together at most"
+    )
+    default int publishBatchSize()
+    {
+        return 50;
+    }
+
+    @Range(
+            max = 60000
+    )
+    @ConfigItem(
+            position = 10,
+            keyName = "publishBatchMillis",
+            name = "Publish batch window",
+            description = "Milliseconds to wait for more events before sending a batch"
+    )
+    default int publishBatchMillis()
+    {
+        return 1000;
+    }
+
+    @ConfigItem(
+            position = 11,
+            keyName = "aggregatorMode",
+            name = "Account aggregation",
+            description = "One client hosts /accounts with the events of every client on this machine, the others send theirs to it"
+    )
+    default AggregatorMode aggregatorMode()
+    {
+        return AggregatorMode.OFF;
+    }
+
+    @Range(
+            min = 1024,
+            max = 65535
+    )
+    @ConfigItem(
+            position = 12,
+            keyName = "aggregatorPort",
+            name = "Aggregation port",
+            description = "Local port the host listens on for the other clients"
+    )
+    default int aggregatorPort()
+    {
+        return 5049;
+    }
 }
@@ -1,29 +1,39 @@
 package com.httpeventserver;
 
+import com.google.inject.Provides;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.inject.Provides;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 
 
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
+import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameTick;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.ItemContainerChanged;
+import net.runelite.api.events.NpcDespawned;
+import net.runelite.api.events.NpcSpawned;
+import net.runelite.api.events.WidgetClosed;
+import net.runelite.api.events.WidgetLoaded;
 import net.runelite.api.widgets.ComponentID;
-import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.InterfaceID;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
@@ -32,7 +42,6 @@ import net.runelite.client.game.ItemStack;
 import net.runelite.client.game.NPCManager;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
-import net.runelite.http.api.RuneLiteAPI;
 
 import static java.lang.Integer.parseInt;
 
@@ -58,24 +67,31 @@ public class HttpEventServerPlugin extends Plugin {
     @Inject
     public ClientThread clientThread;
     public HttpServer server;
+    // Bank and loot are kept in a file per account in here
+    public File stateDirectory = new File(RuneLite.RUNELITE_DIR, "httpeventserver");
     public String msg;
     public String msgType;
 
-    private boolean lastBankOpenStatus;
-    public Item[] bankItems;
+    // Replaced on the client thread whenever the bank container changes
+    private BankIndex bankIndex = BankIndex.EMPTY;
     public String interactingCode;
-    public JsonArray lootArray = new JsonArray();
-
-    private ItemContainer lastBankContainer;
-
-    private ItemContainer fishingTrawlerContainer;
+    // Only touched on the client thread
+    private final LootLog lootLog = new LootLog(512);
+    // Written by the client thread, read without locking by the HTTP threads
+    private final ChatLog chatLog = new ChatLog(256);
+    // Only touched on the client thread
+    private NpcTracker npcTracker;
+    // False until the state from before the plugin started or before logging in was read
+    private boolean seeded;
+
+    // Replaced on the client thread when ItemContainerChanged reports different items
+    private Item[] inventory;
+    private Item[] equipment;
+    private boolean inventoryChanged;
+    private boolean equipmentChanged;
 
     public Boolean bankOpen;
 
-    private boolean lastShopOpenStatus;
-
-    private boolean lastTrawlerRewardOpenStatus;
-
     public Boolean shopOpen;
 
     public Boolean trawlerRewardOpen;
@@ -84,8 +100,36 @@ public class HttpEventServerPlugin extends Plugin {
 
     public Integer msgTick = 0;
 
-    public JsonObject interactingJson = new JsonObject();
-    public JsonObject npcJson = new JsonObject();
+    // Written by the client thread once per tick, read by the HTTP threads
+    private volatile GameStateSnapshot snapshot = GameStateSnapshot.EMPTY;
+    private ResponseCache responseCache;
+    private EventStream eventStream;
+    private LongPoll longPoll;
+    private RequestExecutor requestExecutor;
+    private Metrics metrics;
+    // Set by the client thread, read by the HTTP threads
+    private volatile StateStore stateStore;
+    // Completes once the previous store released its file, a store is opened after that
+    private CompletableFuture<Void> storeClosed = CompletableFuture.completedFuture(null);
+    // Account hash the bank, the loot and the store belong to, -1 until logged in
+    private long storeAccount = -1;
+    // Null unless events are pushed to a configured target
+    private EventPublisher publisher;
+    // Null unless this client hosts /accounts, or sends its events to the client that does
+    private AccountAggregator accountAggregator;
+    private AccountSender accountSender;
+    private LatencyHistogram lootHookTimer;
+    private LatencyHistogram npcHookTimer;
+    private LatencyHistogram snapshotHookTimer;
+    // Roughly a minute of ticks, older ?since= versions get a full snapshot
+    private final SnapshotHistory history = new SnapshotHistory(100);
+    // An hour of ticks at full resolution, 10 and 100 hours in buckets of 10 and 100 ticks
+    private final StatRecorder statRecorder = new StatRecorder(6000);
+
+    private static final int TICK_MILLIS = 600;
+    private static final int NPC_CAPACITY = 512;
+    private static final List<String> BATCH_SECTIONS = Arrays.asList("events", "inv", "equip", "bank");
+    private static final int MAX_REQUEST_BODY = 4096;
 
     public enum equipmentSlots
     {
@@ -107,20 +151,187 @@ public class HttpEventServerPlugin extends Plugin {
 
         log.info("Starting HttpEventServer on port {}", HttpPortNumber);
 
-        server = HttpServer.create(new InetSocketAddress(HttpPortNumber), 0);
-        server.createContext("/inv", handlerForInventory());
-        server.createContext("/equip", handlerForEquipment());
-        server.createContext("/bank", handlerForBank());
-        server.createContext("/events", this::handleEvents);
-        server.setExecutor(Executors.newSingleThreadExecutor());
         startTime = System.currentTimeMillis();
+        responseCache = new ResponseCache(startTime);
+        eventStream = new EventStream();
+        longPoll = new LongPoll(Math.max(1, config.workerThreads()));
+        requestExecutor = new RequestExecutor(config.executorMode(), config.workerThreads(), config.queueLimit());
+        metrics = new Metrics();
+        publisher = EventPublisher.create(config.publishTarget(), config.publishBatchSize(), config.publishBatchMillis());
+        if (config.aggregatorMode() == AggregatorMode.HOST) {
+            try {
+                accountAggregator = new AccountAggregator(config.aggregatorPort());
+            } catch (IOException e) {
+                log.warn("Unable to host the accounts on port {}", config.aggregatorPort(), e);
+            }
+        } else if (config.aggregatorMode() == AggregatorMode.MEMBER) {
+            accountSender = new AccountSender(config.aggregatorPort(), startTime);
+        }
+        lootHookTimer = metrics.tickHook("removeOldItems");
+        npcHookTimer = metrics.tickHook("trackNpcs");
+        snapshotHookTimer = metrics.tickHook("captureSnapshot");
+        seeded = false;
+        npcTracker = new NpcTracker(NPC_CAPACITY, id -> {
+            Integer maxHealth = npcManager.getHealth(id);
+            return maxHealth != null ? maxHealth : 0;
+        });
+        snapshot = GameStateSnapshot.initial(bankIndex, lootLog.view());
+        history.clear();
+        statRecorder.clear();
+
+        InetSocketAddress address = new InetSocketAddress(HttpPortNumber);
+        server = config.transport() == Transport.NIO
+                ? new NioHttpServer(address, config.backlog(), config.maxConnections())
+                : HttpServer.create(address, config.backlog());
+        createContext("/inv", pollable(handlerForInventory()));
+        createContext("/equip", pollable(handlerForEquipment()));
+        createContext("/bank", pollable(handlerForBank()));
+        createContext("/events", pollable(this::handleEvents));
+        createContext("/stream", this::handleStream);
+        createContext("/status", this::handleStatus);
+        createContext("/metrics", this::handleMetrics);
+        createContext("/loot", this::handleLootHistory);
+        createContext("/batch", pollable(this::handleBatch));
+        createContext("/npcs", pollable(this::handleNpcs));
+        createContext("/chat", pollable(this::handleChat));
+        createContext("/history", this::handleHistory);
+        if (accountAggregator != null) {
+            createContext("/accounts", accountAggregator::handle);
+        }
+        server.setExecutor(requestExecutor);
         server.start();
     }
 
+    private void createContext(String path, HttpHandler handler) {
+        server.createContext(path, metrics.instrument(path, RequestExecutor.guard(handler)));
+    }
+
+    private HttpHandler pollable(HttpHandler handler) {
+        //Answer once the next tick (or tick n) has happened with ?waitForTick or ?waitForTick=<n>,
+        //or once there was loot, a chat message or a bank change with ?waitFor=loot|chat|bank
+        return exchange -> {
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+            if (params == null || !(params.containsKey("waitForTick") || params.containsKey("waitFor"))) {
+                handler.handle(exchange);
+                return;
+            }
+
+            String event = params.get("waitFor");
+            int tick = longPoll.nextTick();
+            long timeout = LongPoll.DEFAULT_TIMEOUT_MILLIS;
+            boolean valid = event == null || LongPoll.EVENTS.contains(event);
+            try {
+                if (event == null && !params.get("waitForTick").isEmpty()) {
+                    tick = parseInt(params.get("waitForTick"));
+                }
+                if (params.containsKey("timeout")) {
+                    timeout = Math.min(Long.parseLong(params.get("timeout")), LongPoll.MAX_TIMEOUT_MILLIS);
+                    valid &= timeout >= 0;
+                }
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+            if (!valid) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+
+            if (!longPoll.park(exchange, tick, event, timeout, () -> handler.handle(exchange))) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            }
+        };
+    }
+
     @Override
     protected void shutDown() throws Exception {
         log.info("Stopping HttpEventServer");
+        eventStream.shutdown();
+        longPoll.shutdown();
+        if (publisher != null) {
+            publisher.shutdown();
+            publisher = null;
+        }
+        if (accountAggregator != null) {
+            accountAggregator.shutdown();
+            accountAggregator = null;
+        }
+        if (accountSender != null) {
+            accountSender.shutdown();
+            accountSender = null;
+        }
         server.stop(1);
+        requestExecutor.shutdown();
+        if (stateStore != null) {
+            stateStore.close();
+            stateStore = null;
+        }
+    }
+
+    /**
+     * Opens the store of the logged in account and restores what was stored before, called on the
+     * first tick after logging in. The store is opened and closed on its own thread, what it restores
+     * is added by the client thread afterwards and shows up in the next snapshot.
+     */
+    private void restoreState() {
+        long account = client.getAccountHash();
+        if (stateStore != null && account == storeAccount) {
+            return;
+        }
+        if (stateStore != null) {
+            storeClosed = stateStore.closeAsync();
+            stateStore = null;
+        }
+        if (account != storeAccount) {
+            //Nothing seen on another account may be served for this one
+            bankIndex = bankIndex.cleared();
+            lootLog.clear();
+            storeAccount = account;
+        }
+        if (account == -1) {
+            return;
+        }
+
+        StateStore store = new StateStore(new File(stateDirectory, "state-" + account + ".dat"));
+        stateStore = store;
+        long start = System.nanoTime();
+        long lootSince = System.currentTimeMillis() - LootLog.EXPIRY_TICKS * TICK_MILLIS;
+        //Logging back in to the account that was just left opens the file it is still closing
+        storeClosed.thenCompose(closed -> store.openAsync(lootSince)).whenComplete((restored, e) -> {
+            if (e != null) {
+                log.warn("Unable to open the HttpEventServer state store, bank and loot will not be persisted",
+                        e instanceof CompletionException ? e.getCause() : e);
+                store.closeAsync();
+                clientThread.invokeLater(() -> {
+                    if (stateStore == store) {
+                        stateStore = null;
+                    }
+                });
+                return;
+            }
+            log.debug("Restored HttpEventServer state in {} us", (System.nanoTime() - start) / 1000);
+            clientThread.invokeLater(() -> applyRestored(store, restored));
+        });
+    }
+
+    private void applyRestored(StateStore store, StateStore.Restored restored) {
+        if (stateStore != store) {
+            //Logged in to another account while the store was opening
+            return;
+        }
+        // Keep what was collected while the plugin was running before, only fill the gaps
+        if (!bankIndex.isKnown() && restored.bank != null) {
+            bankIndex = bankIndex.update(restored.bank);
+        }
+        if (lootLog.size() == 0) {
+            long now = System.currentTimeMillis();
+            for (StateStore.LootRecord loot : restored.loot) {
+                int tick = tickCount - (int) ((now - loot.time) / TICK_MILLIS);
+                lootLog.add(tick, loot.npcId, loot.npcName, loot.interactingCode, loot.itemIds, loot.quantities);
+            }
+        }
     }
 
     @Subscribe
@@ -129,70 +340,313 @@ public class HttpEventServerPlugin extends Plugin {
         msg = event.getMessage();
         msgType = String.valueOf(event.getType());
         msgTick = client.getTickCount();
+        ChatLog.Message message = chatLog.add(msgTick, msgType, event.getName(), msg);
+        if (publisher != null) {
+            publisher.publish("chat", msgTick, message::toJson);
+        }
+
+        eventStream.publish(EventStream.CHAT, message.sequence, () -> {
+            JsonObject chat = new JsonObject();
+            chat.addProperty("latestMsg", message.text);
+            chat.addProperty("latestMsgType", message.type);
+            chat.addProperty("msgTick", message.tick);
+            chat.addProperty("seq", message.sequence);
+            return PayloadSerializer.toBytes(chat);
+        });
+        signal(LongPoll.CHAT);
+    }
+
+    private void signal(String event) {
+        if (longPoll.hasWaiters(event)) {
+            //Requests waiting for the event must see it, do not wait for the next tick to capture it
+            GameStateSnapshot state = captureSnapshot(snapshot.npcs);
+            snapshot = state;
+            history.add(state);
+            longPoll.signal(event);
+        }
+    }
+
+    @Subscribe
+    public void onItemContainerChanged(ItemContainerChanged event)
+    {
+        //Only changed containers are read, the next snapshot picks them up
+        if (event.getContainerId() == InventoryID.INVENTORY.getId()) {
+            Item[] items = event.getItemContainer().getItems();
+            if (!sameItems(inventory, items)) {
+                inventory = items;
+                inventoryChanged = true;
+                if (publisher != null) {
+                    //Serialized on the publisher thread, the items array is not changed anymore
+                    publisher.publish("inventory", tickCount, () -> PayloadSerializer.inventory(items));
+                }
+            }
+        } else if (event.getContainerId() == InventoryID.EQUIPMENT.getId()) {
+            Item[] items = event.getItemContainer().getItems();
+            if (!sameItems(equipment, items)) {
+                equipment = items;
+                equipmentChanged = true;
+                if (publisher != null) {
+                    publisher.publish("equipment", tickCount, () -> PayloadSerializer.equipment(items));
+                }
+            }
+        } else if (event.getContainerId() == InventoryID.BANK.getId()) {
+            BankIndex updated = bankIndex.update(event.getItemContainer().getItems());
+            if (updated != bankIndex) {
+                if (stateStore != null) {
+                    stateStore.appendBank(updated);
+                }
+                if (publisher != null) {
+                    long since = bankIndex.version;
+                    publisher.publish("bank", tickCount, () -> updated.changesSince(since));
+                }
+                bankIndex = updated;
+                signal(LongPoll.BANK);
+            }
+        }
+    }
+
+    @Subscribe
+    public void onWidgetLoaded(WidgetLoaded event)
+    {
+        setWindowOpen(event.getGroupId(), Boolean.TRUE);
+    }
+
+    @Subscribe
+    public void onWidgetClosed(WidgetClosed event)
+    {
+        setWindowOpen(event.getGroupId(), Boolean.FALSE);
+    }
+
+    private void setWindowOpen(int groupId, Boolean open) {
+        String window;
+        switch (groupId) {
+            case InterfaceID.BANK:
+                bankOpen = open;
+                window = "bank";
+                break;
+            case InterfaceID.SHOP:
+                shopOpen = open;
+                window = "shop";
+                break;
+            case InterfaceID.FISHING_TRAWLER_REWARD:
+                trawlerRewardOpen = open;
+                window = "trawlerReward";
+                break;
+            default:
+                return;
+        }
+        if (publisher != null) {
+            JsonObject data = new JsonObject();
+            data.addProperty("window", window);
+            data.addProperty("open", open);
+            publisher.publish("window", tickCount, () -> data);
+        }
+    }
+
+    @Subscribe
+    public void onNpcSpawned(NpcSpawned event)
+    {
+        npcTracker.add(event.getNpc());
+    }
+
+    @Subscribe
+    public void onNpcDespawned(NpcDespawned event)
+    {
+        npcTracker.remove(event.getNpc());
+    }
+
+    @Subscribe
+    public void onGameStateChanged(GameStateChanged event)
+    {
+        //The scene is rebuilt after logging out or hopping, NPCs spawn again once logged in
+        if (event.getGameState() == GameState.LOGIN_SCREEN || event.getGameState() == GameState.HOPPING) {
+            npcTracker.clear();
+        }
+        if (event.getGameState() == GameState.LOGIN_SCREEN) {
+            seeded = false;
+        }
     }
 
     @Subscribe
     public void onGameTick(final GameTick event) {
+        long start = System.nanoTime();
         tickCount = client.getTickCount();
-        this.detectBankWindowClosing();
-        this.detectShopWindowClosing();
-        this.detectTrawlerNetClosing();
+        if (!seeded) {
+            seed();
+            seeded = true;
+        }
         this.removeOldItems();
+        long end = System.nanoTime();
+        lootHookTimer.record(end - start);
+
+        start = end;
+        NpcTracker.View npcs = npcTracker.capture(tickCount);
+        end = System.nanoTime();
+        npcHookTimer.record(end - start);
+
+        start = end;
+        GameStateSnapshot state = captureSnapshot(npcs);
+        snapshot = state;
+        history.add(state);
+        if (state.player != GameStateSnapshot.PlayerState.NONE) {
+            statRecorder.record(tickCount, state.player);
+        }
+        snapshotHookTimer.record(System.nanoTime() - start);
+        eventStream.publish(EventStream.TICK, state.version,
+                () -> section(state, "events", WireFormat.JSON).body);
+        longPoll.tick(tickCount);
+        publishAccount(state);
     }
 
-    private void removeOldItems() {
-        if(lootArray.size() > 0) {
-            JsonArray lootArrayCopy = lootArray.deepCopy();
-            for (JsonElement drops : lootArray) {
-                int dropTickCount = 0;
-                try {
-                    dropTickCount = Integer.parseInt(drops.getAsJsonObject().get("tickCount").getAsString());
-                }catch(Exception e){
-                    dropTickCount = 0;
-                }
-                //Remove items from lootArray if item older then 200 Ticks
-                if (tickCount - dropTickCount > 200) {
-                    lootArrayCopy.remove(0);
-                }
-            }
-            lootArray = lootArrayCopy;
+    private void publishAccount(GameStateSnapshot state) {
+        Player player = client.getLocalPlayer();
+        if ((accountAggregator == null && accountSender == null) || player == null || player.getName() == null) {
+            return;
+        }
+        //Names can contain non-breaking spaces where players see spaces
+        String name = player.getName().replace('\u00A0', ' ');
+        //Serialized by whoever needs the body first, never on the client thread
+        Supplier<byte[]> events = () -> section(state, "events", WireFormat.JSON).body;
+        if (accountAggregator != null) {
+            accountAggregator.update(name, startTime, state.version, state.tickCount, events);
+        } else {
+            accountSender.send(name, state.version, state.tickCount, events);
         }
     }
 
-    private void detectBankWindowClosing(){
-        Widget con = client.getWidget(ComponentID.BANK_ITEM_CONTAINER);
-        if(con != null) {
-            lastBankOpenStatus = true;
-            lastBankContainer = client.getItemContainer(InventoryID.BANK);
+    /**
+     * Reads what changed before the plugin started or while logged out, later changes arrive as events.
+     */
+    private void seed() {
+        restoreState();
+        client.getNpcs().forEach(npcTracker::add);
+        inventory = getContainerItems(InventoryID.INVENTORY);
+        equipment = getContainerItems(InventoryID.EQUIPMENT);
+        inventoryChanged = true;
+        equipmentChanged = true;
+        if (client.getWidget(ComponentID.BANK_ITEM_CONTAINER) != null) {
             bankOpen = Boolean.TRUE;
-        }else if(lastBankOpenStatus){
-            lastBankOpenStatus = false;
-            bankItems = lastBankContainer.getItems();
-            bankOpen = Boolean.FALSE;
+        }
+        if (client.getWidget(ComponentID.SHOP_INVENTORY_ITEM_CONTAINER) != null) {
+            shopOpen = Boolean.TRUE;
+        }
+        if (client.getItemContainer(InventoryID.FISHING_TRAWLER_REWARD) != null) {
+            trawlerRewardOpen = Boolean.TRUE;
         }
     }
 
-    private void detectShopWindowClosing(){
-        Widget con = client.getWidget(ComponentID.SHOP_INVENTORY_ITEM_CONTAINER);
-        if(con != null) {
-            lastShopOpenStatus = true;
-            shopOpen = Boolean.TRUE;
-        }else if(lastShopOpenStatus){
-            lastShopOpenStatus = false;
-            shopOpen = Boolean.FALSE;
+    public GameStateSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private GameStateSnapshot captureSnapshot(NpcTracker.View npcs) {
+        GameStateSnapshot previous = snapshot;
+        Player player = client.getLocalPlayer();
+
+        GameStateSnapshot.PlayerState playerState = GameStateSnapshot.PlayerState.NONE;
+        GameStateSnapshot.NpcState npcState = GameStateSnapshot.NpcState.NONE;
+
+        if (player != null) {
+            Actor npcTarget = player.getInteracting();
+            interactingCode = String.valueOf(npcTarget);
+            playerState = new GameStateSnapshot.PlayerState(
+                    player.getAnimation(),
+                    player.getPoseAnimation(),
+                    interactingCode,
+                    client.getEnergy(),
+                    client.getVarpValue(VarPlayer.SPECIAL_ATTACK_PERCENT),
+                    client.getBoostedSkillLevel(Skill.PRAYER),
+                    client.getRealSkillLevel(Skill.PRAYER),
+                    client.getBoostedSkillLevel(Skill.HITPOINTS),
+                    client.getRealSkillLevel(Skill.HITPOINTS),
+                    toCoordinates(player.getWorldLocation()));
+
+            if (npcTarget != null) {
+                npcState = captureNpc(npcTarget);
+            }
         }
+
+        boolean inventoryChanged = this.inventoryChanged;
+        boolean equipmentChanged = this.equipmentChanged;
+        this.inventoryChanged = false;
+        this.equipmentChanged = false;
+        return new GameStateSnapshot(
+                previous.version + 1,
+                inventoryChanged ? previous.version + 1 : previous.inventoryVersion,
+                equipmentChanged ? previous.version + 1 : previous.equipmentVersion,
+                tickCount,
+                client.getGameCycle(),
+                msg,
+                msgType,
+                msgTick,
+                bankOpen,
+                shopOpen,
+                trawlerRewardOpen,
+                playerState,
+                npcState,
+                new GameStateSnapshot.CameraState(client.getCameraYaw(), client.getCameraPitch(),
+                        client.getCameraX(), client.getCameraY(), client.getCameraZ()),
+                inventory,
+                equipment,
+                bankIndex,
+                lootLog.view(),
+                npcs);
     }
 
-    private void detectTrawlerNetClosing(){
-        ItemContainer reward = client.getItemContainer(InventoryID.FISHING_TRAWLER_REWARD);
+    private GameStateSnapshot.NpcState captureNpc(Actor npcTarget) {
+        String npcName = "";
+        int npcId = 0;
+        int npcCombatLvl = 0;
+        int npcMaxHealth = 0;
+        GameStateSnapshot.Coordinates npcCoordinates = GameStateSnapshot.Coordinates.NONE;
+
+        if (npcTarget instanceof NPC) {
+            npcId = ((NPC) npcTarget).getId();
+            Integer maxHealth = npcManager.getHealth(npcId);
+            npcMaxHealth = maxHealth != null ? maxHealth : 0;
+            npcName = npcTarget.getName();
+            npcCombatLvl = npcTarget.getCombatLevel();
+            npcCoordinates = toCoordinates(npcTarget.getWorldLocation());
+        }
 
-        if(reward != null) {
-            lastTrawlerRewardOpenStatus = true;
-            trawlerRewardOpen = Boolean.TRUE;
-        }else if(lastTrawlerRewardOpenStatus){
-            lastTrawlerRewardOpenStatus = false;
-            trawlerRewardOpen = Boolean.FALSE;
+        int npcCurrentHealth = getNpcCurrentHealth(npcTarget.getHealthRatio(), npcTarget.getHealthScale(), npcMaxHealth, 0);
+        return new GameStateSnapshot.NpcState(npcName, npcId, npcCombatLvl, npcCurrentHealth, npcMaxHealth, npcCoordinates);
+    }
+
+    private static GameStateSnapshot.Coordinates toCoordinates(WorldPoint location) {
+        if (location == null) {
+            return GameStateSnapshot.Coordinates.NONE;
+        }
+        return new GameStateSnapshot.Coordinates(location.getX(), location.getY(), location.getPlane(),
+                location.getRegionID(), location.getRegionX(), location.getRegionY());
+    }
+
+    private static boolean sameItems(Item[] a, Item[] b) {
+        if (a == b) {
+            return true;
         }
+        if (a == null || b == null || a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].getId() != b[i].getId() || a[i].getQuantity() != b[i].getQuantity()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Item[] getContainerItems(InventoryID inventoryID) {
+        ItemContainer itemContainer = client.getItemContainer(inventoryID);
+        if (itemContainer != null) {
+            return itemContainer.getItems();
+        }
+        return null;
+    }
+
+    private void removeOldItems() {
+        //Remove items from the loot log if older then 200 Ticks
+        lootLog.expire(tickCount);
     }
 
     public Client getClient() {
@@ -201,26 +655,32 @@ public class HttpEventServerPlugin extends Plugin {
 
     @Subscribe
     public void onNpcLootReceived(final NpcLootReceived npcLootReceived) {
+        NPC npc = npcLootReceived.getNpc();
+        Collection<ItemStack> items = npcLootReceived.getItems();
 
+        int[] ids = new int[items.size()];
+        int[] quantities = new int[items.size()];
         int count = 0;
-
-        JsonObject loot = new JsonObject();
-        JsonArray itemList = new JsonArray();
-        String npcId = String.valueOf(npcLootReceived.getNpc());
-        JsonElement npcObject = interactingJson.get(interactingCode);
-        for(ItemStack item : npcLootReceived.getItems()){
-            JsonObject dict = new JsonObject();
-            dict.addProperty("id",item.getId());
-            dict.addProperty("quantity",item.getQuantity());
-            itemList.add(dict);
+        for(ItemStack item : items){
+            ids[count] = item.getId();
+            quantities[count] = item.getQuantity();
             count++;
         }
-        loot.add("loot", itemList);
-        loot.add("npc",npcObject);
-        loot.addProperty("tickCount", client.getTickCount());
-        loot.addProperty("interactingCode",npcId);
-        lootArray.add(loot);
 
+        int tick = client.getTickCount();
+        String interactingCode = String.valueOf(npc);
+        lootLog.add(tick, npc.getId(), npc.getName(), interactingCode, ids, quantities);
+        if (stateStore != null) {
+            stateStore.appendLoot(new StateStore.LootRecord(System.currentTimeMillis(), tick, npc.getId(), npc.getName(),
+                    interactingCode, ids, quantities));
+        }
+
+        LootLog.View view = lootLog.view();
+        eventStream.publish(EventStream.LOOT, view.end() - 1, () -> PayloadSerializer.toBytes(view.entryJson(view.size() - 1)));
+        if (publisher != null) {
+            publisher.publish("loot", tick, () -> view.entryJson(view.size() - 1));
+        }
+        signal(LongPoll.LOOT);
     }
 
     public Map<String, String> queryToMap(String query) {
@@ -239,137 +699,359 @@ public class HttpEventServerPlugin extends Plugin {
         return result;
     }
     public void handleEvents(HttpExchange exchange) throws IOException {
-        Player player = client.getLocalPlayer();
-        Actor npcTarget = player.getInteracting();
+        GameStateSnapshot state = snapshot;
 
         //Reset LootArray by the following /events?resetLootArray=1
         String resetLootArray = "";
+        //Only fetch what changed after a previously returned version with /events?since=<version>
+        String since = null;
+        //Only fetch some fields with /events?fields=playerObject.currentHealth,npcObject,tickCount
+        String fields = null;
+        //Binary encoding with /events?format=cbor or an Accept: application/cbor header
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        WireFormat format = WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+        if (format == null) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
         try {
-            Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
             if(params.containsKey("resetLootArray")){
                 resetLootArray = params.get("resetLootArray");
             }
+            since = params.get("since");
+            fields = params.get("fields");
         }
         catch(Exception e) {
         }
 
-        //Used Variables
-        int npcHealthRatio;
-        int npcHealthScale;
-        int npcMaxHealth = 0;
-        int npcCurrentHealth = 0;
-        int npcCombatLvl = 0;
-        int npcX = 0;
-        int npcY = 0;
-        int npcPlane = 0;
-        int npcRegionID = 0;
-        int npcRegionX = 0;
-        int npcRegionY = 0;
-        int npcId = 0;
-        String npcName = "";
+        if(resetLootArray.equals("1")){
+            //The loot log is owned by the client thread, let it do the reset
+            clientThread.invokeLater(lootLog::clear);
+        }
 
-        if (npcTarget != null) {
-            interactingCode = String.valueOf(player.getInteracting());
+        if (since != null) {
+            handleEventsSince(exchange, state, since, format);
+            return;
+        }
 
-            npcHealthRatio = npcTarget.getHealthRatio();
-            npcHealthScale = npcTarget.getHealthScale();
+        if (fields != null) {
+            EventsProjection projection;
+            try {
+                projection = EventsProjection.forFields(fields);
+            } catch (IllegalArgumentException e) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            responseCache.getVariant("events-fields-" + projection.key, state.version, format, () -> projection.apply(state)).send(exchange);
+            return;
+        }
 
-            if (npcTarget instanceof NPC)
-            {
-                npcId = ((NPC) npcTarget).getId();
-                npcMaxHealth = npcManager.getHealth(((NPC) npcTarget).getId());
-                npcName = npcTarget.getName();
-                npcCombatLvl = npcTarget.getCombatLevel();
-                npcX = npcTarget.getWorldLocation().getX();
-                npcY = npcTarget.getWorldLocation().getY();
-                npcPlane = npcTarget.getWorldLocation().getPlane();
-                npcRegionID = npcTarget.getWorldLocation().getRegionID();
-                npcRegionX = npcTarget.getWorldLocation().getRegionX();
-                npcRegionY = npcTarget.getWorldLocation().getRegionY();
-
-                JsonObject dict = new JsonObject();
-
-                if(!interactingJson.has(interactingCode)) {
-                    dict.addProperty("name",npcName);
-                    dict.addProperty("id",npcId);
-                    interactingJson.add(interactingCode, dict);
+        section(state, "events", format).send(exchange);
+    }
+
+    private void handleEventsSince(HttpExchange exchange, GameStateSnapshot state, String since, WireFormat format) throws IOException {
+        long sinceVersion;
+        try {
+            sinceVersion = Long.parseLong(since);
+        } catch (NumberFormatException e) {
+            sinceVersion = -1;
+        }
+
+        GameStateSnapshot base = history.get(sinceVersion);
+        if (base == null || base.version > state.version) {
+            responseCache.get("events-full", state.version, format, () -> EventsDelta.full(state)).send(exchange);
+            return;
+        }
+        responseCache.getVariant("events-since-" + base.version, state.version, format, () -> EventsDelta.build(base, state)).send(exchange);
+    }
+
+    public void handleStream(HttpExchange exchange) throws IOException {
+        //Subscribe to a subset of the topics with /stream?topics=tick,chat,loot
+        Set<String> topics = EventStream.TOPICS;
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        if (params != null && params.containsKey("topics")) {
+            topics = new HashSet<>(Arrays.asList(params.get("topics").split(",")));
+            topics.retainAll(EventStream.TOPICS);
+        }
+        if (!eventStream.subscribe(exchange, topics)) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        }
+    }
+
+    public void handleStatus(HttpExchange exchange) throws IOException {
+        JsonObject status = new JsonObject();
+        status.addProperty("uptime", System.currentTimeMillis() - startTime);
+        GameStateSnapshot state = snapshot;
+        status.addProperty("version", state.version);
+        //Each container's version only moves when its items change, and is the ETag version of its endpoint
+        JsonObject containers = new JsonObject();
+        containers.addProperty("inventory", state.inventoryVersion);
+        containers.addProperty("equipment", state.equipmentVersion);
+        containers.addProperty("bank", state.bank.version);
+        status.add("containers", containers);
+        status.add("executor", requestExecutor.toJson());
+        EventPublisher publisher = this.publisher;
+        if (publisher != null) {
+            status.add("publisher", publisher.toJson());
+        }
+        sendJson(exchange, status);
+    }
+
+    private static void sendJson(HttpExchange exchange, JsonElement element) throws IOException {
+        send(exchange, WireFormat.JSON, element);
+    }
+
+    private static void send(HttpExchange exchange, WireFormat format, JsonElement element) throws IOException {
+        byte[] body = format.encode(element);
+        exchange.getResponseHeaders().set("Content-Type", format.contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public void handleMetrics(HttpExchange exchange) throws IOException {
+        byte[] body = metrics.render(requestExecutor).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public void handleLootHistory(HttpExchange exchange) throws IOException {
+        //Stored loot between two times in epoch milliseconds with /loot?from=<time>&to=<time>&limit=<count>
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        int limit = 1000;
+        try {
+            if (params != null && params.containsKey("from")) {
+                from = Long.parseLong(params.get("from"));
+            }
+            if (params != null && params.containsKey("to")) {
+                to = Long.parseLong(params.get("to"));
+            }
+            if (params != null && params.containsKey("limit")) {
+                limit = parseInt(params.get("limit"));
+            }
+        } catch (NumberFormatException e) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        StateStore store = stateStore;
+        sendJson(exchange, store != null ? store.readLoot(from, to, limit) : new JsonArray());
+    }
+
+    public void handleHistory(HttpExchange exchange) throws IOException {
+        //Recorded values of a player stat with /history?metric=currentHealth&from=<tick>&to=<tick>&step=<ticks>,
+        //by default the last 100 ticks one by one
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        WireFormat format = WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+        JsonObject range = null;
+        if (format != null && params != null && params.containsKey("metric")) {
+            try {
+                int to = params.containsKey("to") ? parseInt(params.get("to")) : statRecorder.lastTick();
+                int from = params.containsKey("from") ? parseInt(params.get("from")) : to - 99;
+                int step = params.containsKey("step") ? parseInt(params.get("step")) : 1;
+                range = statRecorder.range(params.get("metric"), from, to, step);
+            } catch (IllegalArgumentException e) {
+                range = null;
+            }
+        }
+        if (range == null) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        send(exchange, format, range);
+    }
+
+    public void handleNpcs(HttpExchange exchange) throws IOException {
+        //Every NPC around the player with /npcs, filtered with /npcs?radius=<tiles>&id=3029,3030
+        GameStateSnapshot state = snapshot;
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        WireFormat format = WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+        int radius = -1;
+        int[] ids = null;
+        try {
+            if (params != null && params.containsKey("radius")) {
+                radius = parseInt(params.get("radius"));
+            }
+            if (params != null && params.containsKey("id")) {
+                String[] values = params.get("id").split(",");
+                ids = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    ids[i] = parseInt(values[i].trim());
                 }
             }
-            npcCurrentHealth = getNpcCurrentHealth(npcHealthRatio, npcHealthScale, npcMaxHealth, npcCurrentHealth);
-        }
-
-        JsonObject object = new JsonObject();
-        JsonObject camera = new JsonObject();
-        JsonObject playerCoordinates = new JsonObject();
-        JsonObject npcCoordinates = new JsonObject();
-        JsonObject playerObject = new JsonObject();
-        JsonObject npcObject = new JsonObject();
-
-        //GENERAL
-        object.addProperty("latestMsg", msg);
-        object.addProperty("gameCycle", client.getGameCycle());
-        object.addProperty("tickCount", tickCount);
-        object.addProperty("latestMsg", msg);
-        object.addProperty("latestMsgType", msgType);
-        object.addProperty("msgTick", msgTick);
-        object.addProperty("bankOpen", bankOpen);
-        object.addProperty("shopOpen", shopOpen);
-        object.addProperty("trawlerRewardOpen", trawlerRewardOpen);
-        //PLAYER
-        playerObject.addProperty("animation", player.getAnimation());
-        playerObject.addProperty("animationPose", player.getPoseAnimation());
-        playerObject.addProperty("interactingCode", String.valueOf(player.getInteracting()));
-        playerObject.addProperty("runEnergy", client.getEnergy());
-        playerObject.addProperty("specialAttackEnergy", client.getVarpValue(VarPlayer.SPECIAL_ATTACK_PERCENT));
-        playerObject.addProperty("currentPrayer", client.getBoostedSkillLevel(Skill.PRAYER));
-        playerObject.addProperty("maxPrayer", client.getRealSkillLevel(Skill.PRAYER));
-        playerObject.addProperty("currentHealth", client.getBoostedSkillLevel(Skill.HITPOINTS));
-        playerObject.addProperty("maxHealth", client.getRealSkillLevel(Skill.HITPOINTS));
-            //PLAYER COORDINATES
-            playerCoordinates.addProperty("x", player.getWorldLocation().getX());
-            playerCoordinates.addProperty("y", player.getWorldLocation().getY());
-            playerCoordinates.addProperty("plane", player.getWorldLocation().getPlane());
-            playerCoordinates.addProperty("regionID", player.getWorldLocation().getRegionID());
-            playerCoordinates.addProperty("regionX", player.getWorldLocation().getRegionX());
-            playerCoordinates.addProperty("regionY", player.getWorldLocation().getRegionY());
-        //NPC
-        npcObject.addProperty("name", npcName);
-        npcObject.addProperty("id", npcId);
-        npcObject.addProperty("combatLevel ", npcCombatLvl);
-        npcObject.addProperty("currentHealth ", npcCurrentHealth);
-        npcObject.addProperty("maxHealth ", npcMaxHealth);
-        //PLAYER COORDINATES
-            npcCoordinates.addProperty("x", npcX);
-            npcCoordinates.addProperty("y", npcY);
-            npcCoordinates.addProperty("plane", npcPlane);
-            npcCoordinates.addProperty("regionID", npcRegionID);
-            npcCoordinates.addProperty("regionX", npcRegionX);
-            npcCoordinates.addProperty("regionY", npcRegionY);
-        //CAMERA
-        camera.addProperty("yaw", client.getCameraYaw());
-        camera.addProperty("pitch", client.getCameraPitch());
-        camera.addProperty("x", client.getCameraX());
-        camera.addProperty("y", client.getCameraY());
-        camera.addProperty("z", client.getCameraZ());
-        // camera.addProperty("x2", client.getCameraX2());
-        // camera.addProperty("y2", client.getCameraY2());
-        // camera.addProperty("z2", client.getCameraZ2());
-
-        playerObject.add("playerCoordinates", playerCoordinates);
-        npcObject.add("npcCoordinates", npcCoordinates);
-        object.add("camera", camera);
-        object.add("playerObject", playerObject);
-        object.add("npcObject", npcObject);
-        object.add("lootArray", lootArray);
+        } catch (NumberFormatException e) {
+            format = null;
+        }
+        if (format == null) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
 
-        if(resetLootArray.equals("1")){
-            lootArray = new JsonArray();
+        int npcRadius = radius;
+        int[] npcIds = ids;
+        StringBuilder key = new StringBuilder("npcs-").append(radius).append("-");
+        if (ids == null) {
+            key.append("all");
+        } else {
+            for (int id : ids) {
+                key.append(id).append('.');
+            }
+        }
+        responseCache.getVariant(key.toString(), state.version, format, () -> {
+            JsonObject npcs = new JsonObject();
+            npcs.addProperty("version", state.version);
+            npcs.addProperty("tickCount", state.npcs.tick);
+            npcs.add("npcs", state.npcs.toJson(state.player.coordinates, npcRadius, npcIds));
+            return npcs;
+        }).send(exchange);
+    }
+
+    public void handleChat(HttpExchange exchange) throws IOException {
+        //Messages after a sequence number with /chat?after=<seq>, of some types only with &type=GAMEMESSAGE,SPAM
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        WireFormat format = WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+        long after = 0;
+        int limit = 256;
+        Set<String> types = null;
+        try {
+            if (params != null && params.containsKey("after")) {
+                after = Long.parseLong(params.get("after"));
+            }
+            if (params != null && params.containsKey("limit")) {
+                limit = parseInt(params.get("limit"));
+            }
+            if (params != null && params.containsKey("type")) {
+                types = new HashSet<>();
+                for (String type : params.get("type").split(",")) {
+                    types.add(type.trim().toUpperCase());
+                }
+            }
+        } catch (NumberFormatException e) {
+            format = null;
+        }
+        if (format == null || limit < 1) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        send(exchange, format, chatLog.after(after, types, limit));
+    }
+
+    public void handleBatch(HttpExchange exchange) throws IOException {
+        //Several endpoints from the same tick with /batch?include=events,inv,equip,bank or POST include=events,inv
+        String include = null;
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            String body = readRequestBody(exchange);
+            if (body == null) {
+                exchange.sendResponseHeaders(413, -1);
+                exchange.close();
+                return;
+            }
+            include = body.trim();
+            if (include.startsWith("include=")) {
+                //A form body is encoded, unlike the query string getQuery() returns
+                try {
+                    include = URLDecoder.decode(include.substring("include=".length()), "UTF-8");
+                } catch (IllegalArgumentException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+        } else if (params != null) {
+            include = params.get("include");
+        }
+        WireFormat format = WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+        if (format == null) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        List<String> sections = new ArrayList<>();
+        for (String name : (include == null || include.isEmpty() ? String.join(",", BATCH_SECTIONS) : include).split(",")) {
+            name = name.trim();
+            if (!BATCH_SECTIONS.contains(name)) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            if (!sections.contains(name)) {
+                sections.add(name);
+            }
+        }
+
+        GameStateSnapshot state = snapshot;
+        String key = "batch-" + String.join(",", sections) + (format == WireFormat.JSON ? "" : "." + format.name);
+        responseCache.getVariant(key, state.version, format.contentType, () -> batchBody(state, sections, format)).send(exchange);
+    }
+
+    private byte[] batchBody(GameStateSnapshot state, List<String> sections, WireFormat format) {
+        List<String> names = new ArrayList<>(Arrays.asList("version", "tickCount"));
+        List<byte[]> values = new ArrayList<>(Arrays.asList(
+                format.encode(new JsonPrimitive(state.version)),
+                format.encode(new JsonPrimitive(state.tickCount))));
+        for (String name : sections) {
+            names.add(name);
+            values.add(section(state, name, format).body);
+        }
+        return format.object(names, values);
+    }
+
+    /**
+     * @return the cached body of one endpoint, built from exactly the given snapshot
+     */
+    private CachedResponse section(GameStateSnapshot state, String name, WireFormat format) {
+        switch (name) {
+            case "inv":
+                if (format == WireFormat.JSON) {
+                    return responseCache.get("inv", state.inventoryVersion, format.contentType,
+                            () -> PayloadSerializer.inventoryJson(state.inventory));
+                }
+                return responseCache.get("inv", state.inventoryVersion, format, () -> PayloadSerializer.inventory(state.inventory));
+            case "equip":
+                if (format == WireFormat.JSON) {
+                    return responseCache.get("equip", state.equipmentVersion, format.contentType,
+                            () -> PayloadSerializer.equipmentJson(state.equipment));
+                }
+                return responseCache.get("equip", state.equipmentVersion, format, () -> PayloadSerializer.equipment(state.equipment));
+            case "bank":
+                return responseCache.get("bank", state.bank.version, format, () -> PayloadSerializer.bank(state.bank));
+            default:
+                return responseCache.get("events", state.version, format, () -> PayloadSerializer.events(state));
         }
+    }
 
-        exchange.sendResponseHeaders(200, 0);
-        try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-            RuneLiteAPI.GSON.toJson(object, out);
+    /**
+     * @return the request body, or null when it is longer than MAX_REQUEST_BODY bytes
+     */
+    private static String readRequestBody(HttpExchange exchange) throws IOException {
+        byte[] body = new byte[MAX_REQUEST_BODY];
+        int length = 0;
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while (length < body.length && (n = in.read(body, length, body.length - length)) != -1) {
+                length += n;
+            }
+            if (length == body.length && in.read() != -1) {
+                return null;
+            }
         }
+        return new String(body, 0, length, StandardCharsets.UTF_8);
     }
 
     public static int getNpcCurrentHealth(int npcHealthRatio, int npcHealthScale, int npcMaxHealth, int npcCurrentHealth) {
@@ -405,119 +1087,75 @@ public class HttpEventServerPlugin extends Plugin {
         return npcCurrentHealth;
     }
 
+    private WireFormat negotiate(HttpExchange exchange) {
+        //Binary encoding with ?format=cbor or an Accept: application/cbor header
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        return WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+    }
+
     private HttpHandler handlerForInventory() {
         return exchange -> {
-            Item[] items = invokeAndWait(() -> {
-                ItemContainer itemContainer = client.getItemContainer(InventoryID.INVENTORY);
-                if (itemContainer != null) {
-                    return itemContainer.getItems();
-                }
-                return null;
-            });
-
-            if (items == null) {
-                List<Object> emptyArray = new ArrayList<Object>();
-                exchange.sendResponseHeaders(200, 0);
-                try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-                    RuneLiteAPI.GSON.toJson(emptyArray, out);
-                }
-            }
-
-            List<Object> itemArray = new ArrayList<Object>();
-
-            int count = 0;
-                for (Item i : items) {
-                    Map<String, Integer> dict = new HashMap<String, Integer>();
-                    dict.put("id",i.getId());
-                    dict.put("invSlot",count);
-                    dict.put("quantity",i.getQuantity());
-                    itemArray.add(dict);
-                    count++;
-                }
-
-            exchange.sendResponseHeaders(200, 0);
-            try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-                RuneLiteAPI.GSON.toJson(itemArray, out);
+            GameStateSnapshot state = snapshot;
+            WireFormat format = negotiate(exchange);
+            if (format == null) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
             }
+            section(state, "inv", format).send(exchange);
         };
     }
 
     private HttpHandler handlerForBank() {
         return exchange -> {
-            if (bankItems == null) {
-                List<Object> emptyArray = new ArrayList<Object>();
-                exchange.sendResponseHeaders(200, 0);
-                try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-                    RuneLiteAPI.GSON.toJson(emptyArray, out);
-                }
-            }else{
-                exchange.sendResponseHeaders(200, 0);
-                try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-                    RuneLiteAPI.GSON.toJson(bankItems, out);
+            GameStateSnapshot state = snapshot;
+            BankIndex bank = state.bank;
+            Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+            WireFormat format = WireFormat.negotiate(params, exchange.getRequestHeaders().getFirst("Accept"));
+            if (format == null) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            if (params == null) {
+                section(state, "bank", format).send(exchange);
+                return;
+            }
+
+            try {
+                //Single item with /bank?id=995, several with /bank?ids=995,560 and changes with /bank?since=<version>
+                if (params.containsKey("id")) {
+                    send(exchange, format, bank.lookup(parseInt(params.get("id"))));
+                } else if (params.containsKey("ids")) {
+                    String[] values = params.get("ids").split(",");
+                    int[] ids = new int[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        ids[i] = parseInt(values[i].trim());
+                    }
+                    send(exchange, format, bank.lookup(ids));
+                } else if (params.containsKey("since")) {
+                    long since = Long.parseLong(params.get("since"));
+                    responseCache.getVariant("bank-since-" + since, bank.version, format, () -> bank.changesSince(since)).send(exchange);
+                } else {
+                    section(state, "bank", format).send(exchange);
                 }
+            } catch (NumberFormatException e) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
             }
         };
     }
 
     private HttpHandler handlerForEquipment() {
         return exchange -> {
-            Item[] items = invokeAndWait(() -> {
-                ItemContainer itemContainer = client.getItemContainer(InventoryID.EQUIPMENT);
-                if (itemContainer != null) {
-                    return itemContainer.getItems();
-                }
-                return null;
-            });
-
-            if (items == null) {
-                List<Object> emptyArray = new ArrayList<Object>();
-                exchange.sendResponseHeaders(200, 0);
-                try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-                    RuneLiteAPI.GSON.toJson(emptyArray, out);
-                }
-            }
-
-            JsonObject equipmentObject = new JsonObject();
-
-            int count = 0;
-            for (Item i : items) {
-                JsonObject slot = new JsonObject();
-                slot.addProperty("id", i.getId());
-                slot.addProperty("quantity",i.getQuantity());
-                //Do this better, ask Rob
-                if(equipmentSlots.values()[count] == equipmentSlots.placeholderA || equipmentSlots.values()[count] == equipmentSlots.placeholderB || equipmentSlots.values()[count] == equipmentSlots.placeholderC) {
-
-                }else{
-                    equipmentObject.add(String.valueOf(equipmentSlots.values()[count]), slot);
-                }
-                count++;
-            }
-
-            exchange.sendResponseHeaders(200, 0);
-            try (OutputStreamWriter out = new OutputStreamWriter(exchange.getResponseBody())) {
-                RuneLiteAPI.GSON.toJson(equipmentObject, out);
+            GameStateSnapshot state = snapshot;
+            WireFormat format = negotiate(exchange);
+            if (format == null) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
             }
+            section(state, "equip", format).send(exchange);
         };
     }
-
-    private <T> T invokeAndWait(Callable<T> r) {
-        try {
-            AtomicReference<T> ref = new AtomicReference<>();
-            Semaphore semaphore = new Semaphore(0);
-            clientThread.invokeLater(() -> {
-                try {
-
-                    ref.set(r.call());
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    semaphore.release();
-                }
-            });
-            semaphore.acquire();
-            return ref.get();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
 }
@@ -0,0 +1,75 @@
+package com.httpeventserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Minimal JSON writer for payloads with a fixed shape. Keys and punctuation are passed
+ * pre-encoded and numbers are written digit by digit.
+ *
+ * A payload is written twice, first only counting its bytes and then into an array of exactly
+ * that size, so the body is the only allocation and no buffer has to be kept between payloads.
+ */
+public final class JsonBytesWriter {
+    // Null while counting
+    private final byte[] buffer;
+    private int length;
+
+    private JsonBytesWriter(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @param payload writes the payload, called twice with the same content
+     * @return exactly the bytes written by the payload
+     */
+    public static byte[] write(Consumer<JsonBytesWriter> payload) {
+        JsonBytesWriter counter = new JsonBytesWriter(null);
+        payload.accept(counter);
+        JsonBytesWriter writer = new JsonBytesWriter(new byte[counter.length]);
+        payload.accept(writer);
+        return writer.buffer;
+    }
+
+    public static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public JsonBytesWriter write(char ascii) {
+        if (buffer != null) {
+            buffer[length] = (byte) ascii;
+        }
+        length++;
+        return this;
+    }
+
+    public JsonBytesWriter write(byte[] bytes) {
+        if (buffer != null) {
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        }
+        length += bytes.length;
+        return this;
+    }
+
+    public JsonBytesWriter write(int value) {
+        if (value == Integer.MIN_VALUE) {
+            return write(utf8(Integer.toString(value)));
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (buffer != null) {
+            for (int i = length + digits - 1; i >= length; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+        length += digits;
+        return this;
+    }
+}
@@ -0,0 +1,206 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Requests parked until a game tick or an event, for {@code ?waitForTick=<n>} and
+ * {@code ?waitFor=loot|chat|bank}.
+ *
+ * A parked request holds no thread, only its exchange. The client thread completes it as soon as
+ * the condition holds, the response is then written by one of a fixed number of completion
+ * threads. Requests that are still waiting when their timeout runs out get a 204.
+ */
+@Slf4j
+public class LongPoll {
+    public static final String LOOT = "loot";
+    public static final String CHAT = "chat";
+    public static final String BANK = "bank";
+    public static final Set<String> EVENTS = new HashSet<>(Arrays.asList(LOOT, CHAT, BANK));
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+    public static final long MAX_TIMEOUT_MILLIS = 60_000;
+    private static final int MAX_WAITERS = 1024;
+
+    public interface Responder {
+        void respond() throws IOException;
+    }
+
+    private final List<Waiter> waiters = new ArrayList<>();
+    private int lastTick;
+    private final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "http-long-poll-timeout"));
+    private final ThreadPoolExecutor completions;
+
+    /**
+     * @param threads completion threads, the queue needs no bound as the waiters already have one
+     */
+    public LongPoll(int threads) {
+        completions = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> daemon(r, "http-long-poll"));
+        completions.allowCoreThreadTimeOut(true);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Parks a request until the given tick was reached, or until the event happened when event is
+     * not null. A tick that already passed is answered straight away on the calling thread.
+     *
+     * @return false when too many requests are already waiting
+     */
+    public boolean park(HttpExchange exchange, int tick, String event, long timeoutMillis, Responder responder) {
+        Waiter waiter = new Waiter(exchange, tick, event, responder);
+        synchronized (this) {
+            if (event != null || tick > lastTick) {
+                if (waiters.size() >= MAX_WAITERS) {
+                    return false;
+                }
+                waiters.add(waiter);
+                waiter.timeout = timeouts.schedule(() -> expire(waiter), timeoutMillis, TimeUnit.MILLISECONDS);
+                return true;
+            }
+        }
+        waiter.done.set(true);
+        respond(waiter);
+        return true;
+    }
+
+    /**
+     * @return the tick the next game tick will have, as far as is known
+     */
+    public synchronized int nextTick() {
+        return lastTick + 1;
+    }
+
+    synchronized int waiting() {
+        return waiters.size();
+    }
+
+    public synchronized boolean hasWaiters(String event) {
+        for (Waiter waiter : waiters) {
+            if (event.equals(waiter.event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Completes the requests waiting for this tick, called after the tick's snapshot was published.
+     */
+    public void tick(int tick) {
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (this) {
+            lastTick = tick;
+            for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                Waiter waiter = it.next();
+                if (waiter.event == null && waiter.tick <= tick) {
+                    it.remove();
+                    ready.add(waiter);
+                }
+            }
+        }
+        complete(ready);
+    }
+
+    /**
+     * Completes the requests waiting for the event, called after a snapshot including it was published.
+     */
+    public void signal(String event) {
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                Waiter waiter = it.next();
+                if (event.equals(waiter.event)) {
+                    it.remove();
+                    ready.add(waiter);
+                }
+            }
+        }
+        complete(ready);
+    }
+
+    public void shutdown() {
+        timeouts.shutdownNow();
+        completions.shutdownNow();
+        List<Waiter> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter waiter : remaining) {
+            waiter.exchange.close();
+        }
+    }
+
+    private void complete(List<Waiter> ready) {
+        for (Waiter waiter : ready) {
+            if (waiter.done.compareAndSet(false, true)) {
+                waiter.timeout.cancel(false);
+                completions.execute(() -> respond(waiter));
+            }
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        if (waiter.done.compareAndSet(false, true)) {
+            completions.execute(() -> {
+                try {
+                    waiter.exchange.sendResponseHeaders(204, -1);
+                } catch (IOException e) {
+                    log.debug("Long poll client {} disconnected", waiter.exchange.getRemoteAddress());
+                } finally {
+                    waiter.exchange.close();
+                }
+            });
+        }
+    }
+
+    private static void respond(Waiter waiter) {
+        try {
+            waiter.responder.respond();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to answer long poll request {}", waiter.exchange.getRequestURI(), e);
+            waiter.exchange.close();
+        }
+    }
+
+    private static final class Waiter {
+        private final HttpExchange exchange;
+        private final int tick;
+        // Null when waiting for a tick
+        private final String event;
+        private final Responder responder;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private ScheduledFuture<?> timeout;
+
+        private Waiter(HttpExchange exchange, int tick, String event, Responder responder) {
+            this.exchange = exchange;
+            this.tick = tick;
+            this.event = event;
+            this.responder = responder;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Fixed capacity log of recent loot drops, stored as primitive records.
+ *
+ * Only the client thread writes to the log. Drops are appended at the tail into fixed size chunks
+ * and expire from the head, so expiring is just moving the head index. A slot is written once and
+ * never reused, which lets every {@link View} share the chunks instead of copying them: taking a
+ * view after a change allocates one small object, and JSON is produced lazily from that view.
+ * Chunks are dropped once every drop in them is gone and no view refers to them anymore.
+ */
+public class LootLog {
+    // Drops older than this many ticks are removed from the log
+    public static final int EXPIRY_TICKS = 200;
+
+    static final int CHUNK_SIZE = 64;
+
+    private final int capacity;
+    // Never modified in place, replaced when a chunk is added or dropped
+    private Chunk[] chunks = new Chunk[0];
+    // Chunk number of chunks[0], the chunk holding sequence number n is n / CHUNK_SIZE
+    private long firstChunk;
+
+    // Sequence numbers of the oldest retained drop and the next drop to be added
+    private long head;
+    private long tail;
+    private long version;
+    private View view = View.EMPTY;
+
+    public LootLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(int tick, int npcId, String npcName, String interactingCode, int[] ids, int[] amounts) {
+        if (tail - head == capacity) {
+            head++;
+        }
+        if (tail / CHUNK_SIZE - firstChunk == chunks.length) {
+            appendChunk();
+        }
+        Chunk chunk = chunks[(int) (tail / CHUNK_SIZE - firstChunk)];
+        int offset = (int) (tail % CHUNK_SIZE);
+        chunk.ticks[offset] = tick;
+        chunk.npcIds[offset] = npcId;
+        chunk.npcNames[offset] = npcName;
+        chunk.interactingCodes[offset] = interactingCode;
+        chunk.itemIds[offset] = ids;
+        chunk.quantities[offset] = amounts;
+        tail++;
+        version++;
+    }
+
+    public void expire(int currentTick) {
+        long oldHead = head;
+        while (head < tail && currentTick - tick(head) > EXPIRY_TICKS) {
+            head++;
+        }
+        if (head != oldHead) {
+            dropExpiredChunks();
+            version++;
+        }
+    }
+
+    public void clear() {
+        if (head == tail) {
+            return;
+        }
+        head = tail;
+        dropExpiredChunks();
+        version++;
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return an immutable view of the retained drops, shared until the log changes again
+     */
+    public View view() {
+        if (view.version != version) {
+            view = new View(version, head, tail, chunks, firstChunk);
+        }
+        return view;
+    }
+
+    private int tick(long sequence) {
+        return chunks[(int) (sequence / CHUNK_SIZE - firstChunk)].ticks[(int) (sequence % CHUNK_SIZE)];
+    }
+
+    private void appendChunk() {
+        // Drops the chunks before the head in the same copy
+        int expired = (int) (head / CHUNK_SIZE - firstChunk);
+        Chunk[] grown = new Chunk[chunks.length - expired + 1];
+        System.arraycopy(chunks, expired, grown, 0, chunks.length - expired);
+        grown[grown.length - 1] = new Chunk();
+        chunks = grown;
+        firstChunk += expired;
+    }
+
+    private void dropExpiredChunks() {
+        int expired = (int) (head / CHUNK_SIZE - firstChunk);
+        if (expired > 0) {
+            chunks = Arrays.copyOfRange(chunks, expired, chunks.length);
+            firstChunk += expired;
+        }
+    }
+
+    private static final class Chunk {
+        final int[] ticks = new int[CHUNK_SIZE];
+        final int[] npcIds = new int[CHUNK_SIZE];
+        final String[] npcNames = new String[CHUNK_SIZE];
+        final String[] interactingCodes = new String[CHUNK_SIZE];
+        final int[][] itemIds = new int[CHUNK_SIZE][];
+        final int[][] quantities = new int[CHUNK_SIZE][];
+    }
+
+    public static final class View {
+        public static final View EMPTY = new View(0, 0, 0, new Chunk[0], 0);
+
+        public final long version;
+        // Sequence number of the first drop in this view
+        public final long first;
+        private final long end;
+        private final Chunk[] chunks;
+        private final long firstChunk;
+        private volatile JsonArray json;
+
+        private View(long version, long first, long end, Chunk[] chunks, long firstChunk) {
+            this.version = version;
+            this.first = first;
+            this.end = end;
+            this.chunks = chunks;
+            this.firstChunk = firstChunk;
+        }
+
+        public int size() {
+            return (int) (end - first);
+        }
+
+        /**
+         * @return sequence number just past the last drop in this view
+         */
+        public long end() {
+            return end;
+        }
+
+        public int tick(int index) {
+            return chunk(index).ticks[offset(index)];
+        }
+
+        public int npcId(int index) {
+            return chunk(index).npcIds[offset(index)];
+        }
+
+        public String npcName(int index) {
+            return chunk(index).npcNames[offset(index)];
+        }
+
+        public String interactingCode(int index) {
+            return chunk(index).interactingCodes[offset(index)];
+        }
+
+        public int[] itemIds(int index) {
+            return chunk(index).itemIds[offset(index)];
+        }
+
+        public int[] quantities(int index) {
+            return chunk(index).quantities[offset(index)];
+        }
+
+        private Chunk chunk(int index) {
+            return chunks[(int) ((first + index) / CHUNK_SIZE - firstChunk)];
+        }
+
+        private int offset(int index) {
+            return (int) ((first + index) % CHUNK_SIZE);
+        }
+
+        public JsonArray toJson() {
+            JsonArray array = json;
+            if (array == null) {
+                array = new JsonArray();
+                for (int i = 0; i < size(); i++) {
+                    array.add(entryJson(i));
+                }
+                json = array;
+            }
+            return array;
+        }
+
+        /**
+         * @return the drops that were added after the given view, oldest first
+         */
+        public JsonArray addedSince(View other) {
+            JsonArray array = new JsonArray();
+            for (int i = (int) Math.max(0, other.end() - first); i < size(); i++) {
+                array.add(entryJson(i));
+            }
+            return array;
+        }
+
+        /**
+         * @return how many of the drops in the given view are no longer in this view
+         */
+        public int removedSince(View other) {
+            return (int) Math.min(other.size(), Math.max(0, first - other.first));
+        }
+
+        public JsonObject entryJson(int index) {
+            Chunk chunk = chunk(index);
+            int offset = offset(index);
+            JsonObject loot = new JsonObject();
+            JsonArray itemList = new JsonArray();
+            for (int i = 0; i < chunk.itemIds[offset].length; i++) {
+                JsonObject dict = new JsonObject();
+                dict.addProperty("id", chunk.itemIds[offset][i]);
+                dict.addProperty("quantity", chunk.quantities[offset][i]);
+                itemList.add(dict);
+            }
+            JsonObject npcObject = new JsonObject();
+            npcObject.addProperty("name", chunk.npcNames[offset]);
+            npcObject.addProperty("id", chunk.npcIds[offset]);
+
+            loot.add("loot", itemList);
+            loot.add("npc", npcObject);
+            loot.addProperty("tickCount", chunk.ticks[offset]);
+            loot.addProperty("interactingCode", chunk.interactingCodes[offset]);
+            return loot;
+        }
+    }
+}
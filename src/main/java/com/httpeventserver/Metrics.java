@@ -0,0 +1,193 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request and tick hook instrumentation, rendered in the Prometheus text format at /metrics.
+ */
+public class Metrics {
+    private static final String PREFIX = "httpeventserver_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    // Bucket bounds of the duration histograms, powers of two nanoseconds from 4 us to 4.3 s. These
+    // are bucket edges of LatencyHistogram, so a bucket can count exactly the values below the edge.
+    // le is inclusive, so it is labelled with the largest value counted, one nanosecond below the edge
+    private static final int[] BUCKET_EXPONENTS = {12, 14, 16, 18, 20, 22, 24, 26, 28, 30, 32};
+
+    private final Map<String, EndpointStats> endpoints = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> tickHooks = new ConcurrentSkipListMap<>();
+
+    /**
+     * Wraps a handler to count its requests, the bytes it writes and how long it takes. A request is
+     * timed until its response is closed, which for a parked long poll is after the handler returned.
+     */
+    public HttpHandler instrument(String endpoint, HttpHandler handler) {
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, e -> new EndpointStats());
+        return exchange -> {
+            CountingOutputStream out = new CountingOutputStream(exchange.getResponseBody(), stats, System.nanoTime());
+            exchange.setStreams(null, out);
+            try {
+                handler.handle(exchange);
+            } catch (IOException | RuntimeException e) {
+                stats.errors.incrementAndGet();
+                out.complete();
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * @return the histogram for a hook that runs on the client thread every tick
+     */
+    public LatencyHistogram tickHook(String name) {
+        return tickHooks.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public String render(RequestExecutor executor) {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "requests_total", "counter", "Requests handled per endpoint");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            sample(out, "requests_total", "endpoint", entry.getKey(), null, null, entry.getValue().requests.get());
+        }
+        header(out, "request_errors_total", "counter", "Requests that failed with an exception per endpoint");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            sample(out, "request_errors_total", "endpoint", entry.getKey(), null, null, entry.getValue().errors.get());
+        }
+        header(out, "response_bytes_total", "counter", "Response body bytes written per endpoint");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            sample(out, "response_bytes_total", "endpoint", entry.getKey(), null, null, entry.getValue().bytes.get());
+        }
+        histogram(out, "request_duration_seconds", "Time until the response was complete", "endpoint", latencies());
+        histogram(out, "tick_hook_duration_seconds", "Time spent on the client thread per tick hook", "hook", tickHooks);
+
+        if (executor != null) {
+            header(out, "executor_active", "gauge", "Requests currently being handled");
+            sample(out, "executor_active", null, null, null, null, executor.getActive());
+            header(out, "executor_queued", "gauge", "Requests waiting for a worker");
+            sample(out, "executor_queued", null, null, null, null, executor.getQueued());
+            header(out, "executor_rejected_total", "counter", "Requests rejected with a 503");
+            sample(out, "executor_rejected_total", null, null, null, null, executor.getRejected());
+            header(out, "executor_completed_total", "counter", "Requests completed by a worker");
+            sample(out, "executor_completed_total", null, null, null, null, executor.getCompleted());
+        }
+        return out.toString();
+    }
+
+    private Map<String, LatencyHistogram> latencies() {
+        Map<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().latency);
+        }
+        return latencies;
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, String label, Map<String, LatencyHistogram> histograms) {
+        header(out, name, "histogram", help);
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            // Values are counted before the total is, so reading the total first keeps the buckets below it
+            long count = histogram.getCount();
+            for (int exponent : BUCKET_EXPONENTS) {
+                long bound = (1L << exponent) - 1;
+                long bucket = Math.min(count, histogram.countAtOrBelow(bound));
+                sample(out, name + "_bucket", label, entry.getKey(), "le", seconds(bound), bucket);
+            }
+            sample(out, name + "_bucket", label, entry.getKey(), "le", "+Inf", count);
+            sample(out, name + "_sum", label, entry.getKey(), null, null, seconds(histogram.getSum()));
+            sample(out, name + "_count", label, entry.getKey(), null, null, count);
+        }
+        header(out, name + "_quantile", "gauge", help + ", quantiles");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            for (double quantile : QUANTILES) {
+                sample(out, name + "_quantile", label, entry.getKey(), "quantile", String.valueOf(quantile),
+                        seconds(entry.getValue().percentile(quantile)));
+            }
+        }
+        header(out, name + "_max", "gauge", help + ", maximum");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            sample(out, name + "_max", label, entry.getKey(), null, null, seconds(entry.getValue().getMax()));
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String labelValue, String extraLabel,
+                               String extraValue, Object value) {
+        out.append(PREFIX).append(name);
+        if (label != null || extraLabel != null) {
+            out.append('{');
+            if (label != null) {
+                out.append(label).append("=\"").append(labelValue.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            if (extraLabel != null) {
+                out.append(label != null ? "," : "").append(extraLabel).append("=\"").append(extraValue).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static final class EndpointStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final EndpointStats stats;
+        private final long start;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private CountingOutputStream(OutputStream out, EndpointStats stats, long start) {
+            super(out);
+            this.stats = stats;
+            this.start = start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            stats.bytes.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            stats.bytes.addAndGet(len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                complete();
+            }
+        }
+
+        // Closing the exchange closes this stream as well, whichever the handler does
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                stats.requests.incrementAndGet();
+                stats.latency.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
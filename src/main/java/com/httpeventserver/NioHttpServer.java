@@ -0,0 +1,982 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link HttpServer} on a single selector thread, for many long lived connections.
+ *
+ * All sockets are read and written by the selector thread through one shared direct buffer each
+ * way, a connection only holds the bytes of a request that is not complete yet and the responses
+ * that are not written yet. A connection with too many pipelined requests waiting is not read
+ * until they were answered. HTTP/1.1 connections are kept alive and pipelined requests are
+ * answered in order, one exchange at a time. Handlers run on the executor behind the context's
+ * authenticator and filters and see a regular {@link HttpExchange}, so they work unchanged on either
+ * transport. They may answer later from another thread, writers that get too far ahead of a slow
+ * socket are blocked until it drained. Response bytes are queued without being copied, so a handler
+ * must not change an array it has written. Connections without an exchange in progress, or whose
+ * client stopped reading, are closed once nothing was read or written for the idle timeout.
+ */
+@Slf4j
+public class NioHttpServer extends HttpServer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int INPUT_SIZE = 4 * 1024;
+    // Parsed requests a connection may have waiting before it is no longer read
+    private static final int MAX_PIPELINED = 16;
+    // Response bytes a connection may have queued before writers are blocked
+    private static final int MAX_PENDING_BYTES = 256 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    // Same as the JDK HttpServer
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+
+    private final int maxConnections;
+    private final long idleTimeoutMillis;
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final List<Connection> connections = new ArrayList<>();
+
+    private InetSocketAddress address;
+    private int backlog;
+    private Executor executor;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    public NioHttpServer(InetSocketAddress address, int backlog, int maxConnections) throws IOException {
+        this(address, backlog, maxConnections, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public NioHttpServer(InetSocketAddress address, int backlog, int maxConnections, long idleTimeoutMillis) throws IOException {
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        if (address != null) {
+            bind(address, backlog);
+        }
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Already bound");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, backlog);
+        serverChannel.configureBlocking(false);
+        this.address = (InetSocketAddress) serverChannel.getLocalAddress();
+        this.backlog = backlog;
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null || thread != null) {
+            throw new IllegalStateException("Not bound or already started");
+        }
+        try {
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the selector", e);
+        }
+        running = true;
+        thread = new Thread(this::run, "http-event-server-nio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void stop(int delay) {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null) {
+            try {
+                thread.join(Math.max(1, delay) * 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        Context context = new Context(path, handler);
+        for (Context existing : contexts) {
+            if (existing.path.equals(path)) {
+                throw new IllegalArgumentException("Context already exists: " + path);
+            }
+        }
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        return createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.path.equals(path))) {
+            throw new IllegalArgumentException("No context for " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        contexts.remove(context);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    private void run() {
+        // Idle connections are looked for a few times per timeout, so they are closed at most a quarter late
+        long sweepInterval = Math.max(1, idleTimeoutMillis / 4);
+        long nextSweep = System.currentTimeMillis() + sweepInterval;
+        try {
+            while (running) {
+                selector.select(sweepInterval);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable()) {
+                        connection.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read();
+                    }
+                }
+                selector.selectedKeys().clear();
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    closeIdle(now);
+                    nextSweep = now + sweepInterval;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.warn("NIO transport stopped", e);
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the NIO transport", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connections.size() >= maxConnections) {
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.lastActive = System.currentTimeMillis();
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        }
+    }
+
+    private void closeIdle(long now) {
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (now - connection.lastActive > idleTimeoutMillis && connection.idle()) {
+                connection.close();
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private Context findContext(String path) {
+        Context match = null;
+        for (Context context : contexts) {
+            if (path.startsWith(context.path) && (match == null || context.path.length() > match.path.length())) {
+                match = context;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * State of one socket. Everything but the output queue is only touched by the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        // Bytes of requests that were read but not parsed yet, the first inputLength bytes of input
+        private byte[] input = new byte[INPUT_SIZE];
+        private int inputLength;
+        private final ArrayDeque<Exchange> requests = new ArrayDeque<>();
+        private Exchange current;
+        private boolean inputClosed;
+        // Time anything was last read or written
+        private long lastActive;
+        // The request being read asked for a 100 Continue before sending its body
+        private boolean expectsContinue;
+        private boolean continueSent;
+
+        // Guarded by this
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private long pending;
+        private boolean closed;
+        private boolean closeWhenWritten;
+        private boolean flushScheduled;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read() {
+            int read;
+            try {
+                readBuffer.clear();
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                inputClosed = true;
+                if (current == null && requests.isEmpty()) {
+                    close();
+                } else {
+                    // Answer what was already asked for, but stop reading
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            readBuffer.flip();
+            if (input.length - inputLength < read) {
+                input = Arrays.copyOf(input, Math.max(input.length * 2, inputLength + read));
+            }
+            readBuffer.get(input, inputLength, read);
+            inputLength += read;
+            parse();
+            if (!reading()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            next();
+        }
+
+        /**
+         * @return false once the input was closed or too many requests are waiting to be answered
+         */
+        private boolean reading() {
+            return !inputClosed && requests.size() < MAX_PIPELINED;
+        }
+
+        /**
+         * @return true when no exchange is in progress, or when queued response bytes are not being taken
+         */
+        private boolean idle() {
+            synchronized (this) {
+                return current == null || !output.isEmpty();
+            }
+        }
+
+        private void parse() {
+            int start = 0;
+            while (start < inputLength && requests.size() < MAX_PIPELINED) {
+                int headerEnd = indexOf(input, start, inputLength);
+                if (headerEnd < 0) {
+                    if (inputLength - start > MAX_HEADER_BYTES) {
+                        reject(431);
+                        return;
+                    }
+                    break;
+                }
+                Exchange exchange = parseHead(new String(input, start, headerEnd - start, StandardCharsets.ISO_8859_1));
+                if (exchange == null) {
+                    reject(400);
+                    return;
+                }
+                if (exchange.requestHeaders.containsKey("Transfer-Encoding")) {
+                    reject(411);
+                    return;
+                }
+                int bodyLength;
+                try {
+                    String contentLength = exchange.requestHeaders.getFirst("Content-Length");
+                    bodyLength = contentLength != null ? Integer.parseInt(contentLength.trim()) : 0;
+                } catch (NumberFormatException e) {
+                    bodyLength = -1;
+                }
+                if (bodyLength < 0 || bodyLength > MAX_BODY_BYTES) {
+                    reject(bodyLength < 0 ? 400 : 413);
+                    return;
+                }
+                int bodyStart = headerEnd + 4;
+                if (inputLength - bodyStart < bodyLength) {
+                    expectsContinue = "100-continue".equalsIgnoreCase(exchange.requestHeaders.getFirst("Expect"))
+                            && exchange.protocol.equals("HTTP/1.1");
+                    break;
+                }
+                exchange.requestBody = new ByteArrayInputStream(Arrays.copyOfRange(input, bodyStart, bodyStart + bodyLength));
+                requests.add(exchange);
+                expectsContinue = false;
+                continueSent = false;
+                start = bodyStart + bodyLength;
+            }
+            sendContinue();
+            // Move the rest to the front, a buffer grown for a large body is given back once it is empty
+            inputLength -= start;
+            if (inputLength == 0 && input.length > INPUT_SIZE) {
+                input = new byte[INPUT_SIZE];
+            } else if (start > 0) {
+                System.arraycopy(input, start, input, 0, inputLength);
+            }
+        }
+
+        private Exchange parseHead(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                return null;
+            }
+            URI uri;
+            try {
+                uri = new URI(requestLine[1]);
+            } catch (URISyntaxException e) {
+                return null;
+            }
+            Headers headers = new Headers();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    return null;
+                }
+                headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            }
+            String connection = headers.getFirst("Connection");
+            boolean http10 = requestLine[2].equals("HTTP/1.0");
+            boolean keepAlive = http10
+                    ? connection != null && connection.equalsIgnoreCase("keep-alive")
+                    : connection == null || !connection.equalsIgnoreCase("close");
+            return new Exchange(this, requestLine[0], uri, requestLine[2], headers, keepAlive);
+        }
+
+        /**
+         * Tells a client waiting for a 100 Continue to send its body, once every earlier request was answered.
+         */
+        private void sendContinue() {
+            if (!expectsContinue || continueSent || current != null || !requests.isEmpty()) {
+                return;
+            }
+            continueSent = true;
+            try {
+                write(CONTINUE, 0, CONTINUE.length);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void reject(int code) {
+            inputLength = 0;
+            inputClosed = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            Exchange exchange = new Exchange(this, "GET", URI.create("/"), "HTTP/1.1", new Headers(), false);
+            requests.add(exchange);
+            exchange.rejectWith = code;
+        }
+
+        /**
+         * Starts the next pipelined request once the previous exchange is complete.
+         */
+        private void next() {
+            if (current != null || closed) {
+                return;
+            }
+            boolean full = requests.size() >= MAX_PIPELINED;
+            current = requests.poll();
+            if (full && !inputClosed) {
+                // Requests that were already read but not parsed come first, then the socket again
+                parse();
+                if (reading() && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+            if (current == null) {
+                if (inputClosed) {
+                    closeWhenWritten();
+                } else {
+                    sendContinue();
+                }
+                return;
+            }
+
+            Exchange exchange = current;
+            Context context = findContext(exchange.uri.getPath() != null ? exchange.uri.getPath() : "/");
+            if (exchange.rejectWith != 0 || context == null || context.handler == null) {
+                // Requests that could not be parsed leave the input in an unknown state, a 404 does not
+                if (exchange.rejectWith != 0) {
+                    exchange.keepAlive = false;
+                }
+                try {
+                    exchange.sendResponseHeaders(exchange.rejectWith != 0 ? exchange.rejectWith : 404, -1);
+                } catch (IOException e) {
+                    close();
+                }
+                exchange.close();
+                return;
+            }
+
+            exchange.context = context;
+            Runnable handle = () -> {
+                try {
+                    if (authenticate(exchange, context.authenticator)) {
+                        new Filter.Chain(context.filters, context.handler).doFilter(exchange);
+                    }
+                } catch (Exception e) {
+                    log.debug("Handler for {} failed", exchange.uri, e);
+                    abort();
+                }
+            };
+            if (executor != null) {
+                executor.execute(handle);
+            } else {
+                handle.run();
+            }
+        }
+
+        /**
+         * @return false when the request was answered by the authenticator
+         */
+        private boolean authenticate(Exchange exchange, Authenticator authenticator) throws IOException {
+            if (authenticator == null) {
+                return true;
+            }
+            Authenticator.Result result = authenticator.authenticate(exchange);
+            if (result instanceof Authenticator.Success) {
+                exchange.principal = ((Authenticator.Success) result).getPrincipal();
+                return true;
+            }
+            int code = result instanceof Authenticator.Failure
+                    ? ((Authenticator.Failure) result).getResponseCode()
+                    : ((Authenticator.Retry) result).getResponseCode();
+            if (exchange.getResponseCode() == -1) {
+                exchange.sendResponseHeaders(code, -1);
+            }
+            exchange.close();
+            return false;
+        }
+
+        private void finished(Exchange exchange) {
+            execute(() -> {
+                if (current == exchange) {
+                    current = null;
+                    if (!exchange.keepAlive) {
+                        requests.clear();
+                        closeWhenWritten();
+                    } else {
+                        next();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Queues response bytes, blocking while too much is queued already.
+         */
+        private void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (this) {
+                // The selector thread drains the queue, it must never wait for itself
+                while (pending > MAX_PENDING_BYTES && !closed && Thread.currentThread() != thread) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while writing", e);
+                    }
+                }
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+                output.add(ByteBuffer.wrap(bytes, offset, length));
+                pending += length;
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            execute(this::flush);
+        }
+
+        private void closeWhenWritten() {
+            synchronized (this) {
+                closeWhenWritten = true;
+            }
+            flush();
+        }
+
+        private void flush() {
+            boolean done;
+            synchronized (this) {
+                flushScheduled = false;
+                if (closed) {
+                    return;
+                }
+                try {
+                    while (!output.isEmpty()) {
+                        // Queued chunks only move on by what the socket took, the rest is copied again next time
+                        writeBuffer.clear();
+                        for (ByteBuffer chunk : output) {
+                            if (!writeBuffer.hasRemaining()) {
+                                break;
+                            }
+                            int position = chunk.position();
+                            int limit = chunk.limit();
+                            chunk.limit(position + Math.min(chunk.remaining(), writeBuffer.remaining()));
+                            writeBuffer.put(chunk);
+                            chunk.limit(limit);
+                            chunk.position(position);
+                        }
+                        writeBuffer.flip();
+                        int written = channel.write(writeBuffer);
+                        pending -= written;
+                        if (written > 0) {
+                            lastActive = System.currentTimeMillis();
+                        }
+                        while (written > 0) {
+                            ByteBuffer chunk = output.peek();
+                            int taken = Math.min(chunk.remaining(), written);
+                            chunk.position(chunk.position() + taken);
+                            written -= taken;
+                            if (!chunk.hasRemaining()) {
+                                output.poll();
+                            }
+                        }
+                        if (writeBuffer.hasRemaining()) {
+                            // The socket is full, keep the rest until it is writable again
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    closed = true;
+                }
+                notifyAll();
+                done = output.isEmpty();
+                if (!closed && key.isValid()) {
+                    int ops = reading() ? SelectionKey.OP_READ : 0;
+                    key.interestOps(done ? ops : ops | SelectionKey.OP_WRITE);
+                }
+            }
+            if (closed || (done && closeWhenWritten)) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection from any thread.
+         */
+        private void abort() {
+            synchronized (this) {
+                closed = true;
+                output.clear();
+                notifyAll();
+            }
+            execute(this::close);
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                output.clear();
+                notifyAll();
+            }
+            if (connections.remove(this)) {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close connection", e);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(byte[] input, int start, int end) {
+        for (int i = start; i + 3 < end; i++) {
+            if (input[i] == '\r' && input[i + 1] == '\n' && input[i + 2] == '\r' && input[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final class Exchange extends HttpExchange {
+        private final Connection connection;
+        private final String method;
+        private final URI uri;
+        private final String protocol;
+        private final Headers requestHeaders;
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private boolean keepAlive;
+        private int rejectWith;
+        private Context context;
+        private HttpPrincipal principal;
+        private InputStream requestBody = new ByteArrayInputStream(new byte[0]);
+        private final ResponseBody rawResponseBody = new ResponseBody();
+        private OutputStream responseBody = rawResponseBody;
+        private int responseCode = -1;
+
+        private Exchange(Connection connection, String method, URI uri, String protocol, Headers requestHeaders,
+                         boolean keepAlive) {
+            this.connection = connection;
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.requestHeaders = requestHeaders;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return context;
+        }
+
+        @Override
+        public void close() {
+            try {
+                responseBody.close();
+            } catch (IOException e) {
+                connection.abort();
+            }
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int code, long length) throws IOException {
+            if (responseCode != -1) {
+                throw new IOException("Headers already sent");
+            }
+            responseCode = code;
+            boolean headRequest = method.equalsIgnoreCase("HEAD");
+            if (code == 204 || code == 304 || code < 200 || length < 0 || headRequest) {
+                rawResponseBody.remaining = 0;
+                if (code != 204 && code != 304 && code >= 200 && !headRequest) {
+                    responseHeaders.set("Content-Length", "0");
+                }
+            } else if (length > 0) {
+                rawResponseBody.remaining = length;
+                responseHeaders.set("Content-Length", Long.toString(length));
+            } else if (protocol.equals("HTTP/1.0")) {
+                // No chunked encoding before HTTP/1.1, the body ends when the connection does
+                rawResponseBody.remaining = Long.MAX_VALUE;
+                keepAlive = false;
+            } else {
+                rawResponseBody.chunked = true;
+                responseHeaders.set("Transfer-Encoding", "chunked");
+            }
+            if (!keepAlive) {
+                responseHeaders.set("Connection", "close");
+            } else if (protocol.equals("HTTP/1.0")) {
+                responseHeaders.set("Connection", "keep-alive");
+            }
+
+            StringBuilder head = new StringBuilder(protocol).append(' ').append(code).append(' ')
+                    .append(reason(code)).append("\r\n");
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                for (String value : header.getValue()) {
+                    head.append(header.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+            byte[] bytes = head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+            connection.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            try {
+                return (InetSocketAddress) connection.channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return address;
+        }
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream in, OutputStream out) {
+            if (in != null) {
+                requestBody = in;
+            }
+            if (out != null) {
+                responseBody = out;
+            }
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return principal;
+        }
+
+        private final class ResponseBody extends OutputStream {
+            private long remaining;
+            private boolean chunked;
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (responseCode == -1) {
+                    throw new IOException("Response headers not sent");
+                }
+                if (closed) {
+                    throw new IOException("Response already closed");
+                }
+                if (length == 0) {
+                    return;
+                }
+                if (chunked) {
+                    byte[] size = (Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                    connection.write(size, 0, size.length);
+                    connection.write(bytes, offset, length);
+                    connection.write(CRLF, 0, CRLF.length);
+                    return;
+                }
+                if (length > remaining) {
+                    throw new IOException("Response body longer than its Content-Length");
+                }
+                remaining -= length;
+                connection.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (responseCode == -1) {
+                    // Nothing was sent, the client cannot be answered anymore
+                    keepAlive = false;
+                } else if (chunked) {
+                    connection.write(LAST_CHUNK, 0, LAST_CHUNK.length);
+                } else if (remaining > 0 && remaining != Long.MAX_VALUE) {
+                    keepAlive = false;
+                }
+                connection.finished(Exchange.this);
+            }
+        }
+    }
+
+    private final class Context extends HttpContext {
+        private final String path;
+        private HttpHandler handler;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<Filter> filters = new ArrayList<>();
+        private Authenticator authenticator;
+
+        private Context(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator) {
+            Authenticator previous = this.authenticator;
+            this.authenticator = authenticator;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+
+    private static String reason(int code) {
+        switch (code) {
+            case 100:
+                return "Continue";
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 411:
+                return "Length Required";
+            case 413:
+                return "Payload Too Large";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return code < 400 ? "OK" : "Error";
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.coords.WorldPoint;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Every NPC in range of the player, keyed by NPC index.
+ *
+ * NPCs are added on spawn and evicted on despawn, so the table never holds more than the client
+ * does and never more than its capacity, spawns beyond it are ignored. Tracked NPCs are kept
+ * densely packed, with an open addressing table from NPC index to position. Only the client thread
+ * touches the tracker, readers get the immutable {@link View} captured every tick.
+ */
+public class NpcTracker {
+    private final int capacity;
+    private final IntUnaryOperator maxHealthLookup;
+
+    private final NPC[] npcs;
+    private final int[] ids;
+    private final int[] maxHealth;
+    private final int[] currentHealth;
+    private int size;
+
+    // NPC index to dense position + 1, 0 marks a free bucket
+    private final int[] keys;
+    private final int[] positions;
+    private final int mask;
+
+    /**
+     * @param maxHealthLookup maximum health of an NPC id, 0 when unknown
+     */
+    public NpcTracker(int capacity, IntUnaryOperator maxHealthLookup) {
+        this.capacity = capacity;
+        this.maxHealthLookup = maxHealthLookup;
+        npcs = new NPC[capacity];
+        ids = new int[capacity];
+        maxHealth = new int[capacity];
+        currentHealth = new int[capacity];
+        int buckets = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        keys = new int[buckets];
+        positions = new int[buckets];
+        mask = buckets - 1;
+    }
+
+    public void add(NPC npc) {
+        int bucket = find(npc.getIndex());
+        if (positions[bucket] != 0) {
+            npcs[positions[bucket] - 1] = npc;
+            ids[positions[bucket] - 1] = -1;
+            return;
+        }
+        if (size == capacity) {
+            return;
+        }
+        keys[bucket] = npc.getIndex();
+        positions[bucket] = size + 1;
+        npcs[size] = npc;
+        // Looked up on the next update
+        ids[size] = -1;
+        size++;
+    }
+
+    public void remove(NPC npc) {
+        int bucket = find(npc.getIndex());
+        if (positions[bucket] == 0 || npcs[positions[bucket] - 1] != npc) {
+            return;
+        }
+        int position = positions[bucket] - 1;
+        delete(bucket);
+
+        // Move the last NPC into the freed position to stay densely packed
+        int last = --size;
+        if (position != last) {
+            npcs[position] = npcs[last];
+            ids[position] = ids[last];
+            maxHealth[position] = maxHealth[last];
+            currentHealth[position] = currentHealth[last];
+            positions[find(npcs[position].getIndex())] = position + 1;
+        }
+        npcs[last] = null;
+    }
+
+    public void clear() {
+        Arrays.fill(npcs, 0, size, null);
+        Arrays.fill(positions, 0);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Refreshes the health estimates and captures the state of every tracked NPC.
+     */
+    public View capture(int tick) {
+        Entry[] entries = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            NPC npc = npcs[i];
+            // NPCs can transform into another id without despawning
+            if (ids[i] != npc.getId()) {
+                ids[i] = npc.getId();
+                maxHealth[i] = maxHealthLookup.applyAsInt(ids[i]);
+                currentHealth[i] = maxHealth[i];
+            }
+            currentHealth[i] = HttpEventServerPlugin.getNpcCurrentHealth(npc.getHealthRatio(), npc.getHealthScale(),
+                    maxHealth[i], currentHealth[i]);
+
+            Actor target = npc.getInteracting();
+            entries[i] = new Entry(npc.getIndex(), ids[i], npc.getName(), npc.getCombatLevel(), currentHealth[i],
+                    maxHealth[i], npc.getWorldLocation(),
+                    target instanceof NPC ? "npc" : target instanceof Player ? "player" : null,
+                    target != null ? target.getName() : null,
+                    target instanceof NPC ? ((NPC) target).getIndex() : -1);
+        }
+        return new View(tick, entries);
+    }
+
+    private int find(int index) {
+        int bucket = mix(index) & mask;
+        while (positions[bucket] != 0 && keys[bucket] != index) {
+            bucket = (bucket + 1) & mask;
+        }
+        return bucket;
+    }
+
+    private void delete(int bucket) {
+        // Shift later entries of the probe chain back so lookups never hit a hole
+        int hole = bucket;
+        int next = (hole + 1) & mask;
+        while (positions[next] != 0) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                positions[hole] = positions[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        positions[hole] = 0;
+    }
+
+    private static int mix(int index) {
+        return index * 0x9E3779B9;
+    }
+
+    public static final class Entry {
+        public final int index;
+        public final int id;
+        public final String name;
+        public final int combatLevel;
+        public final int currentHealth;
+        public final int maxHealth;
+        public final WorldPoint location;
+        // "npc" or "player", null when the NPC is not interacting
+        public final String targetType;
+        public final String targetName;
+        public final int targetIndex;
+
+        private Entry(int index, int id, String name, int combatLevel, int currentHealth, int maxHealth,
+                      WorldPoint location, String targetType, String targetName, int targetIndex) {
+            this.index = index;
+            this.id = id;
+            this.name = name;
+            this.combatLevel = combatLevel;
+            this.currentHealth = currentHealth;
+            this.maxHealth = maxHealth;
+            this.location = location;
+            this.targetType = targetType;
+            this.targetName = targetName;
+            this.targetIndex = targetIndex;
+        }
+    }
+
+    public static final class View {
+        public static final View EMPTY = new View(0, new Entry[0]);
+
+        public final int tick;
+        private final Entry[] entries;
+
+        private View(int tick, Entry[] entries) {
+            this.tick = tick;
+            this.entries = entries;
+        }
+
+        public int size() {
+            return entries.length;
+        }
+
+        /**
+         * @param center only NPCs within radius tiles of this point, on the same plane, are included
+         * @param radius negative for any distance
+         * @param ids only these NPC ids are included, null for all of them
+         */
+        public JsonArray toJson(GameStateSnapshot.Coordinates center, int radius, int[] ids) {
+            JsonArray array = new JsonArray();
+            for (Entry entry : entries) {
+                if (ids != null && !contains(ids, entry.id)) {
+                    continue;
+                }
+                if (radius >= 0 && (entry.location == null || center.plane != entry.location.getPlane()
+                        || Math.max(Math.abs(center.x - entry.location.getX()),
+                                Math.abs(center.y - entry.location.getY())) > radius)) {
+                    continue;
+                }
+                array.add(toJson(entry));
+            }
+            return array;
+        }
+
+        private static boolean contains(int[] ids, int id) {
+            for (int value : ids) {
+                if (value == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static JsonObject toJson(Entry entry) {
+            JsonObject npc = new JsonObject();
+            npc.addProperty("index", entry.index);
+            npc.addProperty("id", entry.id);
+            npc.addProperty("name", entry.name);
+            npc.addProperty("combatLevel", entry.combatLevel);
+            npc.addProperty("currentHealth", entry.currentHealth);
+            npc.addProperty("maxHealth", entry.maxHealth);
+            if (entry.location != null) {
+                JsonObject coordinates = new JsonObject();
+                coordinates.addProperty("x", entry.location.getX());
+                coordinates.addProperty("y", entry.location.getY());
+                coordinates.addProperty("plane", entry.location.getPlane());
+                coordinates.addProperty("regionID", entry.location.getRegionID());
+                coordinates.addProperty("regionX", entry.location.getRegionX());
+                coordinates.addProperty("regionY", entry.location.getRegionY());
+                npc.add("npcCoordinates", coordinates);
+            }
+            if (entry.targetType != null) {
+                JsonObject target = new JsonObject();
+                target.addProperty("type", entry.targetType);
+                target.addProperty("name", entry.targetName);
+                if (entry.targetIndex >= 0) {
+                    target.addProperty("index", entry.targetIndex);
+                }
+                npc.add("target", target);
+            }
+            return npc;
+        }
+    }
+}
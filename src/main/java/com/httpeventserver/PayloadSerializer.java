@@ -0,0 +1,146 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.runelite.api.Item;
+import net.runelite.http.api.RuneLiteAPI;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the JSON payloads of the endpoints from a {@link GameStateSnapshot}.
+ */
+public final class PayloadSerializer {
+    // Slot names by equipment container index, null for the indexes that are never worn
+    private static final String[] EQUIPMENT_SLOT_NAMES = equipmentSlotNames();
+    private static final byte[][] EQUIPMENT_SLOT_KEYS = new byte[EQUIPMENT_SLOT_NAMES.length][];
+
+    private static final byte[] INVENTORY_QUANTITY = JsonBytesWriter.utf8("{\"quantity\":");
+    private static final byte[] INVENTORY_SLOT = JsonBytesWriter.utf8(",\"invSlot\":");
+    private static final byte[] INVENTORY_ID = JsonBytesWriter.utf8(",\"id\":");
+    private static final byte[] EQUIPMENT_QUANTITY = JsonBytesWriter.utf8(",\"quantity\":");
+
+    static {
+        for (int i = 0; i < EQUIPMENT_SLOT_NAMES.length; i++) {
+            if (EQUIPMENT_SLOT_NAMES[i] != null) {
+                EQUIPMENT_SLOT_KEYS[i] = JsonBytesWriter.utf8("\"" + EQUIPMENT_SLOT_NAMES[i] + "\":{\"id\":");
+            }
+        }
+    }
+
+    private PayloadSerializer() {
+    }
+
+    private static String[] equipmentSlotNames() {
+        HttpEventServerPlugin.equipmentSlots[] slots = HttpEventServerPlugin.equipmentSlots.values();
+        String[] names = new String[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != HttpEventServerPlugin.equipmentSlots.placeholderA
+                    && slots[i] != HttpEventServerPlugin.equipmentSlots.placeholderB
+                    && slots[i] != HttpEventServerPlugin.equipmentSlots.placeholderC) {
+                names[i] = slots[i].name();
+            }
+        }
+        return names;
+    }
+
+    public static byte[] toBytes(JsonElement element) {
+        return RuneLiteAPI.GSON.toJson(element).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static JsonObject events(GameStateSnapshot state) {
+        return EventsProjection.ALL.apply(state);
+    }
+
+    public static JsonElement inventory(Item[] items) {
+        List<Object> itemArray = new ArrayList<Object>();
+        if (items == null) {
+            return RuneLiteAPI.GSON.toJsonTree(itemArray);
+        }
+
+        int count = 0;
+        for (Item i : items) {
+            Map<String, Integer> dict = new HashMap<String, Integer>();
+            dict.put("id",i.getId());
+            dict.put("invSlot",count);
+            dict.put("quantity",i.getQuantity());
+            itemArray.add(dict);
+            count++;
+        }
+        return RuneLiteAPI.GSON.toJsonTree(itemArray);
+    }
+
+    public static JsonElement equipment(Item[] items) {
+        if (items == null) {
+            return new JsonArray();
+        }
+
+        JsonObject equipmentObject = new JsonObject();
+        for (int count = 0; count < items.length && count < EQUIPMENT_SLOT_NAMES.length; count++) {
+            if (EQUIPMENT_SLOT_NAMES[count] != null) {
+                JsonObject slot = new JsonObject();
+                slot.addProperty("id", items[count].getId());
+                slot.addProperty("quantity", items[count].getQuantity());
+                equipmentObject.add(EQUIPMENT_SLOT_NAMES[count], slot);
+            }
+        }
+        return equipmentObject;
+    }
+
+    /**
+     * Same payload as {@link #inventory(Item[])}, written without building any intermediate objects.
+     */
+    public static byte[] inventoryJson(Item[] items) {
+        return JsonBytesWriter.write(out -> {
+            out.write('[');
+            if (items != null) {
+                for (int i = 0; i < items.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    out.write(INVENTORY_QUANTITY).write(items[i].getQuantity())
+                            .write(INVENTORY_SLOT).write(i)
+                            .write(INVENTORY_ID).write(items[i].getId())
+                            .write('}');
+                }
+            }
+            out.write(']');
+        });
+    }
+
+    /**
+     * Same payload as {@link #equipment(Item[])}, written without building any intermediate objects.
+     */
+    public static byte[] equipmentJson(Item[] items) {
+        return JsonBytesWriter.write(out -> {
+            if (items == null) {
+                out.write('[').write(']');
+                return;
+            }
+
+            out.write('{');
+            boolean first = true;
+            for (int count = 0; count < items.length && count < EQUIPMENT_SLOT_KEYS.length; count++) {
+                if (EQUIPMENT_SLOT_KEYS[count] != null) {
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    out.write(EQUIPMENT_SLOT_KEYS[count]).write(items[count].getId())
+                            .write(EQUIPMENT_QUANTITY).write(items[count].getQuantity())
+                            .write('}');
+                }
+            }
+            out.write('}');
+        });
+    }
+
+    public static JsonElement bank(BankIndex bank) {
+        return RuneLiteAPI.GSON.toJsonTree(bank.slots());
+    }
+}
@@ -0,0 +1,164 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor for the HttpServer that bounds the number of requests in flight.
+ *
+ * When the limit is reached the request is not queued but run on the server's dispatcher
+ * thread with an overloaded flag set, and the handlers wrapped with {@link #guard} answer it with
+ * a 503 straight away.
+ */
+@Slf4j
+public class RequestExecutor implements Executor {
+    private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<>();
+
+    private final ExecutorMode mode;
+    private final int workerThreads;
+    private final int limit;
+    private final ExecutorService delegate;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    public RequestExecutor(ExecutorMode mode, int workerThreads, int queueLimit) {
+        ExecutorService virtual = mode == ExecutorMode.VIRTUAL_THREADS ? newVirtualThreadExecutor() : null;
+        if (mode == ExecutorMode.VIRTUAL_THREADS && virtual == null) {
+            log.info("Virtual threads are not available on this JVM, using a bounded pool instead");
+            mode = ExecutorMode.BOUNDED_POOL;
+        }
+
+        this.mode = mode;
+        switch (mode) {
+            case SINGLE_THREAD:
+                this.workerThreads = 1;
+                this.limit = Integer.MAX_VALUE;
+                this.delegate = Executors.newSingleThreadExecutor(r -> worker(r));
+                break;
+            case VIRTUAL_THREADS:
+                this.workerThreads = workerThreads;
+                this.limit = workerThreads + queueLimit;
+                this.delegate = virtual;
+                break;
+            default:
+                this.workerThreads = workerThreads;
+                this.limit = workerThreads + queueLimit;
+                BlockingQueue<Runnable> queue = queueLimit > 0 ? new ArrayBlockingQueue<>(queueLimit) : new SynchronousQueue<>();
+                this.delegate = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS, queue, r -> worker(r));
+                break;
+        }
+    }
+
+    private static Thread worker(Runnable r) {
+        Thread thread = new Thread(r, "http-event-server-worker");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            reject(task);
+            return;
+        }
+
+        try {
+            delegate.execute(() -> {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    inFlight.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            reject(task);
+        }
+    }
+
+    private void reject(Runnable task) {
+        rejected.incrementAndGet();
+        OVERLOADED.set(Boolean.TRUE);
+        try {
+            task.run();
+        } finally {
+            OVERLOADED.remove();
+        }
+    }
+
+    /**
+     * Wraps a handler so that requests rejected by the executor get a 503 instead of being handled.
+     */
+    public static HttpHandler guard(HttpHandler handler) {
+        return exchange -> {
+            if (OVERLOADED.get() != null) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            handler.handle(exchange);
+        };
+    }
+
+    public ExecutorMode getMode() {
+        return mode;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getQueued() {
+        return Math.max(0, inFlight.get() - active.get());
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public JsonObject toJson() {
+        JsonObject object = new JsonObject();
+        object.addProperty("mode", mode.name());
+        object.addProperty("workerThreads", workerThreads);
+        object.addProperty("active", getActive());
+        object.addProperty("queued", getQueued());
+        object.addProperty("rejected", getRejected());
+        object.addProperty("completed", getCompleted());
+        return object;
+    }
+
+    public void shutdown() {
+        delegate.shutdownNow();
+    }
+}
@@ -0,0 +1,90 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonElement;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the last serialized body of every endpoint so that all requests for the same
+ * version share a single serialization.
+ *
+ * Keys chosen by the plugin, like {@code inv} or {@code events}, each keep their slot for good.
+ * Keys built from request parameters, like a delta base version or a field list, share a
+ * bounded least recently used set of slots, so clients asking for many of them can only evict
+ * each other.
+ */
+public class ResponseCache {
+    private static final int MAX_VARIANT_SLOTS = 256;
+
+    private final String etagPrefix;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final Map<String, Slot> variants = Collections.synchronizedMap(new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            return size() > MAX_VARIANT_SLOTS;
+        }
+    });
+
+    public ResponseCache(long startTime) {
+        // Versions restart with the plugin, keep ETags from an earlier run from matching
+        this.etagPrefix = Long.toString(startTime, 36);
+    }
+
+    public CachedResponse get(String key, long version, Supplier<? extends JsonElement> payload) {
+        return get(key, version, WireFormat.JSON, payload);
+    }
+
+    public CachedResponse get(String key, long version, WireFormat format, Supplier<? extends JsonElement> payload) {
+        return get(formatKey(key, format), version, format.contentType, () -> format.encode(payload.get()));
+    }
+
+    public CachedResponse get(String key, long version, String contentType, Supplier<byte[]> body) {
+        return slots.computeIfAbsent(key, Slot::new).get(version, contentType, body);
+    }
+
+    /**
+     * Like {@link #get(String, long, WireFormat, Supplier)} for a key built from request parameters.
+     */
+    public CachedResponse getVariant(String key, long version, WireFormat format, Supplier<? extends JsonElement> payload) {
+        return getVariant(formatKey(key, format), version, format.contentType, () -> format.encode(payload.get()));
+    }
+
+    public CachedResponse getVariant(String key, long version, String contentType, Supplier<byte[]> body) {
+        return variants.computeIfAbsent(key, Slot::new).get(version, contentType, body);
+    }
+
+    public void clear() {
+        slots.clear();
+        variants.clear();
+    }
+
+    private static String formatKey(String key, WireFormat format) {
+        return format == WireFormat.JSON ? key : key + "." + format.name;
+    }
+
+    private final class Slot {
+        private final String key;
+        private CachedResponse cached;
+
+        private Slot(String key) {
+            this.key = key;
+        }
+
+        private synchronized CachedResponse get(long version, String contentType, Supplier<byte[]> body) {
+            if (cached != null && cached.version == version) {
+                return cached;
+            }
+            String etag = "\"" + etagPrefix + "-" + key + "-" + version + "\"";
+            CachedResponse response = new CachedResponse(version, etag, contentType, body.get());
+            // A request still holding an older snapshot gets its own body, the newer one stays cached
+            if (cached == null || cached.version < version) {
+                cached = response;
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.httpeventserver;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring of the most recently published snapshots, indexed by version. Written by the client
+ * thread only, readers verify the version of the slot they read so no locking is needed.
+ */
+public class SnapshotHistory {
+    private final AtomicReferenceArray<GameStateSnapshot> ring;
+
+    public SnapshotHistory(int capacity) {
+        ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(GameStateSnapshot snapshot) {
+        ring.set(slot(snapshot.version), snapshot);
+    }
+
+    /**
+     * @return the snapshot published with the given version, or null when it is no longer retained
+     */
+    public GameStateSnapshot get(long version) {
+        if (version < 0) {
+            return null;
+        }
+        GameStateSnapshot snapshot = ring.get(slot(version));
+        return snapshot != null && snapshot.version == version ? snapshot : null;
+    }
+
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+    }
+
+    private int slot(long version) {
+        return (int) (version % ring.length());
+    }
+}
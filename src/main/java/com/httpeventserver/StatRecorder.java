@@ -0,0 +1,223 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Per tick player stats for {@code /history}, kept in columns of primitive arrays.
+ *
+ * Every tick is written into three tiers: single ticks, buckets of 10 ticks and buckets of 100
+ * ticks, each a ring of the same capacity. Finer tiers are overwritten first, so older ranges are
+ * answered from the coarser tiers and memory never grows beyond the rings allocated up front.
+ * Buckets keep the minimum, maximum and sum of every metric.
+ */
+public class StatRecorder {
+    public static final List<String> METRICS = Arrays.asList("currentHealth", "currentPrayer", "runEnergy",
+            "specialAttackEnergy", "x", "y", "plane", "animation");
+    private static final List<ToIntFunction<GameStateSnapshot.PlayerState>> EXTRACTORS = Arrays.asList(
+            p -> p.currentHealth,
+            p -> p.currentPrayer,
+            p -> p.runEnergy,
+            p -> p.specialAttackEnergy,
+            p -> p.coordinates.x,
+            p -> p.coordinates.y,
+            p -> p.coordinates.plane,
+            p -> p.animation);
+    private static final int[] WIDTHS = {1, 10, 100};
+
+    private final int capacity;
+    private final Tier[] tiers = new Tier[WIDTHS.length];
+    private final int[] values = new int[METRICS.size()];
+    private int last = -1;
+
+    /**
+     * @param capacity slots of every tier, capacity ticks are kept at full resolution
+     */
+    public StatRecorder(int capacity) {
+        this.capacity = capacity;
+        for (int i = 0; i < WIDTHS.length; i++) {
+            tiers[i] = new Tier(WIDTHS[i], capacity);
+        }
+    }
+
+    public synchronized void record(int tick, GameStateSnapshot.PlayerState player) {
+        if (tick < last) {
+            //The tick count starts over after logging in again
+            clear();
+        } else if (tick == last) {
+            return;
+        }
+        last = tick;
+        for (int m = 0; m < values.length; m++) {
+            values[m] = EXTRACTORS.get(m).applyAsInt(player);
+        }
+        for (Tier tier : tiers) {
+            tier.add(tick, values);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Tier tier : tiers) {
+            Arrays.fill(tier.buckets, -1);
+        }
+        last = -1;
+    }
+
+    /**
+     * @return the last recorded tick, -1 when nothing was recorded
+     */
+    public synchronized int lastTick() {
+        return last;
+    }
+
+    /**
+     * Values of a metric between two ticks, both included, in groups of step ticks. The range is
+     * read from the finest tier that still holds its start, the step is rounded up to a multiple
+     * of that tier's bucket width.
+     *
+     * @return {metric, from, to, step, ticks, min, max, avg}, ticks holds the first tick of every
+     * group with samples
+     * @throws IllegalArgumentException for an unknown metric or a step below 1
+     */
+    public synchronized JsonObject range(String metric, int from, int to, int step) {
+        int m = METRICS.indexOf(metric);
+        if (m < 0 || step < 1) {
+            throw new IllegalArgumentException("Unknown metric or step: " + metric + ", " + step);
+        }
+
+        Tier tier = tiers[tiers.length - 1];
+        for (Tier candidate : tiers) {
+            if (candidate.oldest(last) <= Math.max(from, 0)) {
+                tier = candidate;
+                break;
+            }
+        }
+        step = (int) Math.min(Integer.MAX_VALUE, ((long) step + tier.width - 1) / tier.width * tier.width);
+        from = Math.max(from, tier.oldest(last));
+        to = Math.min(to, last);
+
+        JsonArray ticks = new JsonArray();
+        JsonArray min = new JsonArray();
+        JsonArray max = new JsonArray();
+        JsonArray avg = new JsonArray();
+        long group = -1;
+        int groupMin = 0;
+        int groupMax = 0;
+        long groupSum = 0;
+        int groupCount = 0;
+        for (long bucket = from / tier.width; from <= to && bucket <= to / tier.width; bucket++) {
+            int slot = (int) (bucket % capacity);
+            if (tier.buckets[slot] != bucket) {
+                continue;
+            }
+            long bucketGroup = bucket * tier.width / step;
+            if (bucketGroup != group) {
+                if (groupCount > 0) {
+                    addGroup(ticks, min, max, avg, group * step, groupMin, groupMax, groupSum, groupCount);
+                }
+                group = bucketGroup;
+                groupMin = Integer.MAX_VALUE;
+                groupMax = Integer.MIN_VALUE;
+                groupSum = 0;
+                groupCount = 0;
+            }
+            groupMin = Math.min(groupMin, tier.min(m, slot));
+            groupMax = Math.max(groupMax, tier.max(m, slot));
+            groupSum += tier.sum(m, slot);
+            groupCount += tier.counts[slot];
+        }
+        if (groupCount > 0) {
+            addGroup(ticks, min, max, avg, group * step, groupMin, groupMax, groupSum, groupCount);
+        }
+
+        JsonObject object = new JsonObject();
+        object.addProperty("metric", metric);
+        object.addProperty("from", from);
+        object.addProperty("to", to);
+        object.addProperty("step", step);
+        object.add("ticks", ticks);
+        object.add("min", min);
+        object.add("max", max);
+        object.add("avg", avg);
+        return object;
+    }
+
+    private static void addGroup(JsonArray ticks, JsonArray min, JsonArray max, JsonArray avg, long tick,
+                                 int groupMin, int groupMax, long sum, int count) {
+        ticks.add(tick);
+        min.add(groupMin);
+        max.add(groupMax);
+        if (sum % count == 0) {
+            avg.add(sum / count);
+        } else {
+            avg.add(Math.round(sum * 100.0 / count) / 100.0);
+        }
+    }
+
+    private static final class Tier {
+        private final int width;
+        // Bucket number held by every slot, tick / width, -1 when empty
+        private final long[] buckets;
+        private final int[] counts;
+        // [metric][slot], single ticks only keep their value in min
+        private final int[][] min;
+        private final int[][] max;
+        private final long[][] sum;
+
+        private Tier(int width, int capacity) {
+            this.width = width;
+            buckets = new long[capacity];
+            Arrays.fill(buckets, -1);
+            counts = new int[capacity];
+            min = new int[METRICS.size()][capacity];
+            max = width > 1 ? new int[METRICS.size()][capacity] : null;
+            sum = width > 1 ? new long[METRICS.size()][capacity] : null;
+        }
+
+        private void add(int tick, int[] values) {
+            long bucket = tick / width;
+            int slot = (int) (bucket % buckets.length);
+            if (buckets[slot] != bucket) {
+                buckets[slot] = bucket;
+                counts[slot] = 0;
+            }
+            for (int m = 0; m < values.length; m++) {
+                if (counts[slot] == 0 || max == null) {
+                    min[m][slot] = values[m];
+                    if (max != null) {
+                        max[m][slot] = values[m];
+                        sum[m][slot] = values[m];
+                    }
+                } else {
+                    min[m][slot] = Math.min(min[m][slot], values[m]);
+                    max[m][slot] = Math.max(max[m][slot], values[m]);
+                    sum[m][slot] += values[m];
+                }
+            }
+            counts[slot]++;
+        }
+
+        /**
+         * @return the first tick this tier still holds
+         */
+        private int oldest(int last) {
+            return (int) Math.max(0, (last / width - buckets.length + 1) * width);
+        }
+
+        private int min(int m, int slot) {
+            return min[m][slot];
+        }
+
+        private int max(int m, int slot) {
+            return max != null ? max[m][slot] : min[m][slot];
+        }
+
+        private long sum(int m, int slot) {
+            return sum != null ? sum[m][slot] : min[m][slot];
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Item;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only, memory-mapped store of bank contents and loot drops, used to restore the plugin
+ * state on start up before the player opens the bank again.
+ *
+ * The client thread only queues the records, a background thread encodes and appends them in
+ * batches. Every record is {@code [int length][byte type][long time][int tick][body]} and the
+ * data is always followed by a zero length, which is where reading stops. Loot records are
+ * indexed by time in memory so history ranges are read with a binary search. When the file
+ * grows too large the latest bank and the most recent drops are written to a new file which then
+ * replaces it, so a crash while compacting leaves the old file intact.
+ *
+ * Only one store can use a file at a time, a second client opening it fails to lock it.
+ */
+@Slf4j
+public class StateStore {
+    private static final int MAGIC = 0x48455353;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 4;
+    private static final byte BANK = 1;
+    private static final byte LOOT = 2;
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final int COMPACT_SIZE = 16 << 20;
+    private static final int MAX_SUPERSEDED_BANKS = 64;
+    private static final int MAX_LOOT_RECORDS = 10_000;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final File file;
+    private final File lockFile;
+    private final ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "http-event-server-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private int bankOffset = -1;
+    private int supersededBanks;
+    private long[] lootTimes = new long[256];
+    private int[] lootOffsets = new int[256];
+    private int lootCount;
+
+    public StateStore(File file) {
+        this.file = file;
+        // The store file is replaced when compacting, the lock has to stay on a file that is not
+        this.lockFile = new File(file.getPath() + ".lock");
+    }
+
+    /**
+     * Locks and maps the store and reads back its contents.
+     *
+     * @param lootSince only drops recorded at or after this time are returned
+     * @throws IOException when the store can not be read or another client is using it
+     */
+    public synchronized Restored open(long lootSince) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            releaseLock();
+            throw new IOException(file + " is used by another client");
+        }
+        try {
+            map();
+        } catch (IOException e) {
+            releaseLock();
+            throw e;
+        }
+
+        Item[] bank = bankOffset >= 0 ? readBank(bankOffset) : null;
+        List<LootRecord> loot = new ArrayList<>();
+        for (int i = lowerBound(lootSince); i < lootCount; i++) {
+            loot.add(readLoot(lootOffsets[i]));
+        }
+
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return new Restored(bank, loot);
+    }
+
+    /**
+     * Opens the store on its own thread, so the caller does not wait for the file to be mapped and
+     * read. Appending before the store is open is fine, the records are written once it is.
+     *
+     * @see #open(long)
+     */
+    public CompletableFuture<Restored> openAsync(long lootSince) {
+        CompletableFuture<Restored> restored = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                try {
+                    restored.complete(open(lootSince));
+                } catch (IOException | RuntimeException e) {
+                    restored.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            restored.completeExceptionally(new IOException(file + " is closed"));
+        }
+        return restored;
+    }
+
+    public void appendBank(BankIndex bank) {
+        pending.add(bank);
+    }
+
+    public void appendLoot(LootRecord loot) {
+        pending.add(loot);
+    }
+
+    /**
+     * @return the drops recorded between the two times (inclusive), at most limit of the oldest ones
+     */
+    public synchronized JsonArray readLoot(long from, long to, int limit) {
+        JsonArray array = new JsonArray();
+        if (buffer == null) {
+            return array;
+        }
+        for (int i = lowerBound(from); i < lootCount && lootTimes[i] <= to && array.size() < limit; i++) {
+            array.add(readLoot(lootOffsets[i]).toJson());
+        }
+        return array;
+    }
+
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeNow();
+    }
+
+    /**
+     * Writes what is pending and closes the store on its own thread, without waiting for it.
+     *
+     * @return completes once the file and its lock are released
+     */
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                try {
+                    closeNow();
+                } finally {
+                    closed.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Already closed
+            closed.complete(null);
+        }
+        writer.shutdown();
+        return closed;
+    }
+
+    private synchronized void closeNow() {
+        flush();
+        try {
+            if (channel != null) {
+                closeFile();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close {}", file, e);
+        }
+        releaseLock();
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+        } catch (IOException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(HEADER_SIZE, 0);
+        }
+
+        bankOffset = -1;
+        supersededBanks = 0;
+        lootCount = 0;
+        int offset = HEADER_SIZE;
+        while (offset + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < RECORD_HEADER_SIZE - 4 || offset + 4 + length > buffer.capacity()) {
+                break;
+            }
+            byte type = buffer.get(offset + 4);
+            if (type == BANK) {
+                if (bankOffset >= 0) {
+                    supersededBanks++;
+                }
+                bankOffset = offset;
+            } else if (type == LOOT) {
+                indexLoot(buffer.getLong(offset + 5), offset);
+            } else {
+                break;
+            }
+            offset += 4 + length;
+        }
+        position = offset;
+    }
+
+    /**
+     * Unmaps and closes the store file, cutting off the zeros the mapping was grown by.
+     */
+    private void closeFile() throws IOException {
+        MappedByteBuffer mapped = buffer;
+        buffer = null;
+        try {
+            mapped.force();
+            unmap(mapped);
+            channel.truncate(position + 4);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to unlock {}", file, e);
+        }
+        lock = null;
+        lockChannel = null;
+    }
+
+    private synchronized void flush() {
+        if (buffer == null) {
+            // Closed, or the file could not be mapped again after compacting
+            pending.clear();
+            return;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            Object record;
+            while ((record = pending.poll()) != null) {
+                ByteBuffer encoded = record instanceof BankIndex ? encodeBank((BankIndex) record) : encodeLoot((LootRecord) record);
+                append(encoded);
+            }
+            buffer.putInt(position, 0);
+
+            if (position > COMPACT_SIZE || supersededBanks > MAX_SUPERSEDED_BANKS) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write to {}", file, e);
+        }
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        int offset = position;
+        ensureCapacity(offset + record.remaining() + 4);
+        byte type = record.get(4);
+        long time = record.getLong(5);
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        target.put(record);
+        position = target.position();
+
+        if (type == BANK) {
+            if (bankOffset >= 0) {
+                supersededBanks++;
+            }
+            bankOffset = offset;
+        } else {
+            indexLoot(time, offset);
+        }
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        if (size > buffer.capacity()) {
+            long newSize = Math.max((long) buffer.capacity() * 2, size);
+            MappedByteBuffer old = buffer;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+            unmap(old);
+        }
+    }
+
+    /**
+     * Writes the latest bank followed by the most recent drops to a new file and replaces the
+     * store with it.
+     */
+    private void compact() throws IOException {
+        File next = new File(file.getPath() + ".next");
+        try (FileChannel out = FileChannel.open(next.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            write(out, header);
+            if (bankOffset >= 0) {
+                write(out, copyRecord(bankOffset));
+            }
+            for (int i = Math.max(0, lootCount - MAX_LOOT_RECORDS); i < lootCount; i++) {
+                write(out, copyRecord(lootOffsets[i]));
+            }
+            write(out, ByteBuffer.allocate(4));
+            out.force(true);
+        }
+
+        try {
+            closeFile();
+            Files.move(next.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // Either the compacted file or, when it could not replace the store, the old one
+            map();
+        }
+        log.debug("Compacted {} to {} bytes", file, position);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private ByteBuffer copyRecord(int offset) {
+        int length = 4 + buffer.getInt(offset);
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset).limit(offset + length);
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(source).flip();
+        return copy;
+    }
+
+    private void indexLoot(long time, int offset) {
+        if (lootCount == lootTimes.length) {
+            lootTimes = Arrays.copyOf(lootTimes, lootCount * 2);
+            lootOffsets = Arrays.copyOf(lootOffsets, lootCount * 2);
+        }
+        lootTimes[lootCount] = time;
+        lootOffsets[lootCount] = offset;
+        lootCount++;
+    }
+
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = lootCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lootTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static ByteBuffer record(byte type, long time, int tick, int bodySize) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodySize);
+        record.putInt(RECORD_HEADER_SIZE - 4 + bodySize);
+        record.put(type);
+        record.putLong(time);
+        record.putInt(tick);
+        return record;
+    }
+
+    private static ByteBuffer encodeBank(BankIndex bank) {
+        BankItem[] slots = bank.slots();
+        ByteBuffer record = record(BANK, System.currentTimeMillis(), 0, 4 + slots.length * 8);
+        record.putInt(slots.length);
+        for (BankItem item : slots) {
+            record.putInt(item.getId());
+            record.putInt(item.getQuantity());
+        }
+        record.flip();
+        return record;
+    }
+
+    private static ByteBuffer encodeLoot(LootRecord loot) {
+        byte[] name = bytes(loot.npcName);
+        byte[] code = bytes(loot.interactingCode);
+        ByteBuffer record = record(LOOT, loot.time, loot.tick, 4 + 4 + name.length + 4 + code.length + 4 + loot.itemIds.length * 8);
+        record.putInt(loot.npcId);
+        record.putInt(name.length).put(name);
+        record.putInt(code.length).put(code);
+        record.putInt(loot.itemIds.length);
+        for (int i = 0; i < loot.itemIds.length; i++) {
+            record.putInt(loot.itemIds[i]);
+            record.putInt(loot.quantities[i]);
+        }
+        record.flip();
+        return record;
+    }
+
+    private Item[] readBank(int offset) {
+        int body = offset + RECORD_HEADER_SIZE;
+        Item[] items = new Item[buffer.getInt(body)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(buffer.getInt(body + 4 + i * 8), buffer.getInt(body + 8 + i * 8));
+        }
+        return items;
+    }
+
+    private LootRecord readLoot(int offset) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + 5);
+        long time = record.getLong();
+        int tick = record.getInt();
+        int npcId = record.getInt();
+        String npcName = string(record);
+        String interactingCode = string(record);
+        int[] itemIds = new int[record.getInt()];
+        int[] quantities = new int[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = record.getInt();
+            quantities[i] = record.getInt();
+        }
+        return new LootRecord(time, tick, npcId, npcName, interactingCode, itemIds, quantities);
+    }
+
+    /**
+     * Releases a mapping right away instead of when it is garbage collected, which also allows
+     * truncating or replacing the file on Windows. There is no public API for it before Java 19.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                //Java 8
+                Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapped);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return;
+            }
+            invokeCleaner.invoke(theUnsafe.get(null), mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Unable to unmap the state store, it is released once garbage collected", e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    public static final class Restored {
+        // Bank slots of the last stored bank, null when no bank was stored yet
+        public final Item[] bank;
+        public final List<LootRecord> loot;
+
+        private Restored(Item[] bank, List<LootRecord> loot) {
+            this.bank = bank;
+            this.loot = loot;
+        }
+    }
+
+    public static final class LootRecord {
+        public final long time;
+        public final int tick;
+        public final int npcId;
+        public final String npcName;
+        public final String interactingCode;
+        public final int[] itemIds;
+        public final int[] quantities;
+
+        public LootRecord(long time, int tick, int npcId, String npcName, String interactingCode, int[] itemIds, int[] quantities) {
+            this.time = time;
+            this.tick = tick;
+            this.npcId = npcId;
+            this.npcName = npcName;
+            this.interactingCode = interactingCode;
+            this.itemIds = itemIds;
+            this.quantities = quantities;
+        }
+
+        public JsonObject toJson() {
+            JsonArray itemList = new JsonArray();
+            for (int i = 0; i < itemIds.length; i++) {
+                JsonObject dict = new JsonObject();
+                dict.addProperty("id", itemIds[i]);
+                dict.addProperty("quantity", quantities[i]);
+                itemList.add(dict);
+            }
+            JsonObject npcObject = new JsonObject();
+            npcObject.addProperty("name", npcName);
+            npcObject.addProperty("id", npcId);
+
+            JsonObject loot = new JsonObject();
+            loot.add("loot", itemList);
+            loot.add("npc", npcObject);
+            loot.addProperty("time", time);
+            loot.addProperty("tickCount", tick);
+            loot.addProperty("interactingCode", interactingCode);
+            return loot;
+        }
+    }
+}
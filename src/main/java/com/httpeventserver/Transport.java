@@ -0,0 +1,20 @@
+package com.httpeventserver;
+
+public enum Transport
+{
+    JDK_HTTP_SERVER("JDK HttpServer"),
+    NIO("NIO selector");
+
+    private final String name;
+
+    Transport(String name)
+    {
+        this.name = name;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
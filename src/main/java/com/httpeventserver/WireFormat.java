@@ -0,0 +1,222 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodings the endpoints can answer in, chosen with {@code format=} or the Accept header.
+ *
+ * CBOR (RFC 8949) carries the same data model as the JSON payloads. Integers, string lengths and
+ * container sizes are written in its variable length form, so small ids and quantities take one
+ * to three bytes. The schema version is part of the content type and only changes when the data
+ * model does.
+ */
+public enum WireFormat {
+    JSON("json", CachedResponse.JSON) {
+        @Override
+        public byte[] encode(JsonElement element) {
+            return PayloadSerializer.toBytes(element);
+        }
+
+        @Override
+        public byte[] object(List<String> names, List<byte[]> values) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write('{');
+            for (int i = 0; i < names.size(); i++) {
+                byte[] name = ((i == 0 ? "\"" : ",\"") + names.get(i) + "\":").getBytes(StandardCharsets.UTF_8);
+                out.write(name, 0, name.length);
+                out.write(values.get(i), 0, values.get(i).length);
+            }
+            out.write('}');
+            return out.toByteArray();
+        }
+    },
+    CBOR("cbor", "application/cbor; schema=" + WireFormat.SCHEMA_VERSION) {
+        @Override
+        public byte[] encode(JsonElement element) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeCbor(out, element);
+            return out.toByteArray();
+        }
+
+        @Override
+        public byte[] object(List<String> names, List<byte[]> values) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeHead(out, MAP, names.size());
+            for (int i = 0; i < names.size(); i++) {
+                writeString(out, names.get(i));
+                out.write(values.get(i), 0, values.get(i).length);
+            }
+            return out.toByteArray();
+        }
+    };
+
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int DOUBLE = 0xfb;
+
+    public final String name;
+    public final String contentType;
+
+    WireFormat(String name, String contentType) {
+        this.name = name;
+        this.contentType = contentType;
+    }
+
+    public abstract byte[] encode(JsonElement element);
+
+    /**
+     * @return an object made of already encoded values, in the given order
+     */
+    public abstract byte[] object(List<String> names, List<byte[]> values);
+
+    /**
+     * @return the requested format, JSON when nothing is asked for, or null for an unknown format
+     */
+    public static WireFormat negotiate(Map<String, String> params, String accept) {
+        String format = params != null ? params.get("format") : null;
+        if (format != null) {
+            for (WireFormat value : values()) {
+                if (value.name.equalsIgnoreCase(format.trim())) {
+                    return value;
+                }
+            }
+            return null;
+        }
+        if (accept == null) {
+            return JSON;
+        }
+        //CBOR only when it is asked for by name and not liked less than JSON
+        float cbor = 0;
+        float json = 0;
+        int jsonSpecificity = -1;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase(Locale.ROOT);
+            float quality = quality(parts);
+            if (type.equals("application/cbor")) {
+                cbor = Math.max(cbor, quality);
+            }
+            // The most specific range that matches JSON decides its quality
+            int specificity = type.equals("application/json") ? 2 : type.equals("application/*") ? 1 : type.equals("*/*") ? 0 : -1;
+            if (specificity > jsonSpecificity) {
+                jsonSpecificity = specificity;
+                json = quality;
+            }
+        }
+        return cbor > 0 && cbor >= json ? CBOR : JSON;
+    }
+
+    private static float quality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+                try {
+                    return Math.max(0, Math.min(1, Float.parseFloat(parameter.substring(2).trim())));
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static void writeCbor(ByteArrayOutputStream out, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            out.write(NULL);
+        } else if (element.isJsonObject()) {
+            // Null members are left out, like in the JSON payloads
+            JsonObject object = element.getAsJsonObject();
+            int size = 0;
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                size += entry.getValue().isJsonNull() ? 0 : 1;
+            }
+            writeHead(out, MAP, size);
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                if (!entry.getValue().isJsonNull()) {
+                    writeString(out, entry.getKey());
+                    writeCbor(out, entry.getValue());
+                }
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHead(out, ARRAY, array.size());
+            for (JsonElement item : array) {
+                writeCbor(out, item);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isString()) {
+                writeString(out, primitive.getAsString());
+            } else {
+                writeNumber(out, primitive.getAsNumber());
+            }
+        }
+    }
+
+    private static void writeNumber(ByteArrayOutputStream out, Number number) {
+        if (number instanceof Double || number instanceof Float || number instanceof BigDecimal) {
+            long bits = Double.doubleToLongBits(number.doubleValue());
+            out.write(DOUBLE);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+            return;
+        }
+        long value = number.longValue();
+        if (value >= 0) {
+            writeHead(out, UNSIGNED, value);
+        } else {
+            writeHead(out, NEGATIVE, -1 - value);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(out, TEXT, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeHead(ByteArrayOutputStream out, int major, long value) {
+        int type = major << 5;
+        if (value < 24) {
+            out.write(type | (int) value);
+        } else if (value < 0x100) {
+            out.write(type | 24);
+            out.write((int) value);
+        } else if (value < 0x10000) {
+            out.write(type | 25);
+            out.write((int) (value >>> 8));
+            out.write((int) value);
+        } else if (value < 0x100000000L) {
+            out.write(type | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+        } else {
+            out.write(type | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccountAggregatorTest {
+    private AccountAggregator aggregator;
+    private HttpServer server;
+
+    @Before
+    public void start() throws IOException {
+        aggregator = new AccountAggregator(0);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/accounts", aggregator::handle);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+        aggregator.shutdown();
+    }
+
+    @Test
+    public void hostUpdateIsSerializedOnceWhenRequested() {
+        AtomicInteger calls = new AtomicInteger();
+        aggregator.update("Host", 36, 7, 100, () -> {
+            calls.incrementAndGet();
+            return bytes("{\"tickCount\":100}");
+        });
+        assertEquals(0, calls.get());
+
+        CachedResponse events = aggregator.events("host");
+        assertNotNull(events);
+        assertEquals("\"10-events-7\"", events.etag);
+        assertEquals(7, events.version);
+        aggregator.events("HOST");
+        assertEquals(1, calls.get());
+        assertNull(aggregator.events("nobody"));
+
+        JsonObject account = account("Host");
+        assertEquals(7, account.get("version").getAsLong());
+        assertEquals(100, account.get("tickCount").getAsInt());
+        assertTrue(account.get("online").getAsBoolean());
+    }
+
+    @Test
+    public void framesUpdateTheAccountUntilTheConnectionCloses() throws Exception {
+        try (Socket socket = connect()) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            AccountAggregator.write(out, "Alt", 36, 1, 10, bytes("{\"tickCount\":10}"));
+            AccountAggregator.write(out, "Alt", 36, 2, 11, bytes("{\"tickCount\":11}"));
+            waitForVersion("Alt", 2);
+            assertEquals("{\"tickCount\":11}", body(aggregator.events("Alt")));
+            assertEquals(11, account("Alt").get("tickCount").getAsInt());
+            assertTrue(account("Alt").get("online").getAsBoolean());
+        }
+
+        waitForOffline("Alt");
+        // The last events are still served
+        assertEquals("{\"tickCount\":11}", body(aggregator.events("Alt")));
+    }
+
+    @Test
+    public void nameBelongsToTheConnectionThatRegisteredIt() throws Exception {
+        try (Socket first = connect(); Socket second = connect()) {
+            DataOutputStream firstOut = new DataOutputStream(first.getOutputStream());
+            DataOutputStream secondOut = new DataOutputStream(second.getOutputStream());
+            AccountAggregator.write(firstOut, "Main", 36, 1, 1, bytes("\"first\""));
+            waitForVersion("Main", 1);
+
+            AccountAggregator.write(secondOut, "main", 72, 5, 5, bytes("\"second\""));
+            // Frames are read in order, so this one was read after the ignored one
+            AccountAggregator.write(secondOut, "Other", 72, 1, 1, bytes("\"other\""));
+            waitForVersion("Other", 1);
+            assertEquals("\"first\"", body(aggregator.events("Main")));
+            aggregator.update("Main", 0, 9, 9, () -> bytes("\"host\""));
+            assertEquals("\"first\"", body(aggregator.events("Main")));
+
+            first.close();
+            waitForOffline("Main");
+            AccountAggregator.write(secondOut, "main", 72, 6, 6, bytes("\"second\""));
+            waitForVersion("Main", 6);
+            assertEquals("\"second\"", body(aggregator.events("Main")));
+            assertTrue(account("Main").get("online").getAsBoolean());
+        }
+    }
+
+    @Test
+    public void oversizedFrameClosesTheConnection() throws Exception {
+        try (Socket socket = connect()) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF("Big");
+            out.writeLong(36);
+            out.writeLong(1);
+            out.writeInt(1);
+            out.writeInt(AccountAggregator.MAX_BODY_BYTES + 1);
+            out.flush();
+            socket.setSoTimeout(5000);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        assertNull(aggregator.events("Big"));
+    }
+
+    @Test
+    public void senderDeliversTheLatestFrame() throws Exception {
+        AccountSender sender = new AccountSender(aggregator.getPort(), 36);
+        try {
+            sender.send("Sent", 3, 30, () -> bytes("{\"tickCount\":30}"));
+            waitForVersion("Sent", 3);
+            assertEquals("{\"tickCount\":30}", body(aggregator.events("Sent")));
+            assertEquals("\"10-events-3\"", aggregator.events("Sent").etag);
+        } finally {
+            sender.shutdown();
+        }
+        waitForOffline("Sent");
+    }
+
+    @Test
+    public void accountsOverHttp() throws Exception {
+        aggregator.update("Host", 36, 4, 40, () -> bytes("{\"tickCount\":40}"));
+
+        HttpURLConnection list = open("/accounts");
+        assertEquals(200, list.getResponseCode());
+        assertEquals(CachedResponse.JSON, list.getHeaderField("Content-Type"));
+        JsonArray accounts = new JsonParser().parse(read(list)).getAsJsonObject().getAsJsonArray("accounts");
+        assertEquals(1, accounts.size());
+        assertEquals("Host", accounts.get(0).getAsJsonObject().get("name").getAsString());
+
+        HttpURLConnection events = open("/accounts/host/events");
+        assertEquals(200, events.getResponseCode());
+        assertEquals("\"10-events-4\"", events.getHeaderField("ETag"));
+        assertEquals("{\"tickCount\":40}", read(events));
+
+        HttpURLConnection cached = open("/accounts/Host/events");
+        cached.setRequestProperty("If-None-Match", "\"10-events-4\"");
+        assertEquals(304, cached.getResponseCode());
+
+        assertEquals(404, open("/accounts/nobody/events").getResponseCode());
+        assertEquals(404, open("/accounts//events").getResponseCode());
+        assertEquals(404, open("/accounts/Host").getResponseCode());
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), aggregator.getPort());
+    }
+
+    private JsonObject account(String name) {
+        for (JsonElement account : aggregator.toJson().getAsJsonArray("accounts")) {
+            if (account.getAsJsonObject().get("name").getAsString().equalsIgnoreCase(name)) {
+                return account.getAsJsonObject();
+            }
+        }
+        return null;
+    }
+
+    private void waitForVersion(String name, long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            JsonObject account = account(name);
+            if (account != null && account.get("version").getAsLong() == version) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        JsonObject account = account(name);
+        assertNotNull(name, account);
+        assertEquals(version, account.get("version").getAsLong());
+    }
+
+    private void waitForOffline(String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (account(name).get("online").getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(account(name).get("online").getAsBoolean());
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + path).openConnection();
+        connection.setReadTimeout(10_000);
+        return connection;
+    }
+
+    private static String body(CachedResponse response) {
+        return new String(response.body, StandardCharsets.UTF_8);
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
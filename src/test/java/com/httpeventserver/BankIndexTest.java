@@ -0,0 +1,162 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.runelite.api.Item;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BankIndexTest {
+    private static final int COINS = 995;
+    private static final int BONES = 526;
+    private static final int LOBSTER = 379;
+
+    @Test
+    public void emptyIndexIsUnknown() {
+        assertFalse(BankIndex.EMPTY.isKnown());
+        assertEquals(0, BankIndex.EMPTY.slots().length);
+        assertEquals(0, BankIndex.EMPTY.quantity(COINS));
+    }
+
+    @Test
+    public void addSumsSlotsOfTheSameItem() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5, COINS, 20, -1, 0));
+
+        assertTrue(bank.isKnown());
+        assertEquals(1, bank.version);
+        assertEquals(120, bank.quantity(COINS));
+        assertEquals(5, bank.quantity(BONES));
+        assertEquals(0, bank.quantity(LOBSTER));
+        assertEquals(4, bank.slots().length);
+    }
+
+    @Test
+    public void unchangedBankKeepsItsVersion() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+        assertSame(bank, bank.update(items(COINS, 100, BONES, 5)));
+    }
+
+    @Test
+    public void movedSlotsBumpTheVersionButNotTheItems() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+        BankIndex moved = bank.update(items(BONES, 5, COINS, 100));
+
+        assertEquals(2, moved.version);
+        assertEquals(BONES, moved.slots()[0].getId());
+        assertEquals(0, changes(moved.changesSince(1)).size());
+    }
+
+    @Test
+    public void quantityChange() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+        BankIndex changed = bank.update(items(COINS, 150, BONES, 5));
+
+        assertEquals(150, changed.quantity(COINS));
+        Map<Integer, Integer> changes = changes(changed.changesSince(1));
+        assertEquals(1, changes.size());
+        assertEquals(150, (int) changes.get(COINS));
+    }
+
+    @Test
+    public void removedItemsAreReportedWithQuantityZero() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+        BankIndex removed = bank.update(items(COINS, 100));
+
+        assertEquals(0, removed.quantity(BONES));
+        Map<Integer, Integer> changes = changes(removed.changesSince(1));
+        assertEquals(1, changes.size());
+        assertEquals(0, (int) changes.get(BONES));
+
+        // A full listing leaves removed items out
+        JsonObject full = removed.changesSince(-1);
+        assertTrue(full.get("full").getAsBoolean());
+        assertFalse(changes(full).containsKey(BONES));
+    }
+
+    @Test
+    public void changesSinceAnEarlierVersion() {
+        BankIndex v1 = BankIndex.EMPTY.update(items(COINS, 100));
+        BankIndex v2 = v1.update(items(COINS, 100, BONES, 5));
+        BankIndex v3 = v2.update(items(COINS, 200, BONES, 5, LOBSTER, 10));
+        BankIndex v4 = v3.update(items(COINS, 200, LOBSTER, 10));
+
+        assertEquals(4, v4.version);
+        Map<Integer, Integer> sinceV1 = changes(v4.changesSince(1));
+        assertEquals(3, sinceV1.size());
+        assertEquals(200, (int) sinceV1.get(COINS));
+        assertEquals(0, (int) sinceV1.get(BONES));
+        assertEquals(10, (int) sinceV1.get(LOBSTER));
+
+        Map<Integer, Integer> sinceV3 = changes(v4.changesSince(3));
+        assertEquals(1, sinceV3.size());
+        assertEquals(0, (int) sinceV3.get(BONES));
+
+        assertEquals(0, changes(v4.changesSince(4)).size());
+        assertFalse(v4.changesSince(4).get("full").getAsBoolean());
+    }
+
+    @Test
+    public void unknownVersionIsAFullListing() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+
+        JsonObject future = bank.changesSince(7);
+        assertTrue(future.get("full").getAsBoolean());
+        assertEquals(2, changes(future).size());
+        assertEquals(1, future.get("version").getAsLong());
+    }
+
+    @Test
+    public void clearedBankReportsEveryItemAsGone() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+        BankIndex cleared = bank.cleared();
+
+        assertFalse(cleared.isKnown());
+        assertEquals(2, cleared.version);
+        assertEquals(0, cleared.quantity(COINS));
+        Map<Integer, Integer> changes = changes(cleared.changesSince(1));
+        assertEquals(2, changes.size());
+        assertEquals(0, (int) changes.get(COINS));
+        assertSame(cleared, cleared.cleared());
+        assertSame(BankIndex.EMPTY, BankIndex.EMPTY.cleared());
+
+        BankIndex other = cleared.update(items(LOBSTER, 10));
+        assertTrue(other.isKnown());
+        assertEquals(3, other.version);
+        assertEquals(1, changes(other.changesSince(2)).size());
+    }
+
+    @Test
+    public void lookup() {
+        BankIndex bank = BankIndex.EMPTY.update(items(COINS, 100, BONES, 5));
+
+        assertEquals(100, bank.lookup(COINS).get("quantity").getAsInt());
+        JsonArray items = bank.lookup(new int[]{BONES, LOBSTER}).getAsJsonArray("items");
+        assertEquals(5, items.get(0).getAsJsonObject().get("quantity").getAsInt());
+        assertEquals(0, items.get(1).getAsJsonObject().get("quantity").getAsInt());
+    }
+
+    private static Item[] items(int... idsAndQuantities) {
+        Item[] items = new Item[idsAndQuantities.length / 2];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(idsAndQuantities[i * 2], idsAndQuantities[i * 2 + 1]);
+        }
+        return items;
+    }
+
+    private static Map<Integer, Integer> changes(JsonObject diff) {
+        Map<Integer, Integer> changes = new HashMap<>();
+        for (JsonElement change : diff.getAsJsonArray("changes")) {
+            JsonObject item = change.getAsJsonObject();
+            changes.put(item.get("id").getAsInt(), item.get("quantity").getAsInt());
+        }
+        return changes;
+    }
+}
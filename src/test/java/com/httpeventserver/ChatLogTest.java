@@ -0,0 +1,122 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChatLogTest {
+    private static final String GAME = "GAMEMESSAGE";
+    private static final String PUBLIC = "PUBLICCHAT";
+
+    @Test
+    public void emptyLog() {
+        JsonObject result = new ChatLog(4).after(0, null, 100);
+        assertEquals(0, result.get("last").getAsLong());
+        assertEquals(0, result.get("missed").getAsLong());
+        assertEquals(0, result.getAsJsonArray("messages").size());
+    }
+
+    @Test
+    public void sequencesStartAtOneInOrder() {
+        ChatLog log = new ChatLog(4);
+        assertEquals(1, log.add(10, GAME, "", "a").sequence);
+        assertEquals(2, log.add(10, PUBLIC, "Zezima", "b").sequence);
+        assertEquals(3, log.add(11, GAME, "", "c").sequence);
+
+        JsonObject result = log.after(0, null, 100);
+        assertEquals(3, result.get("last").getAsLong());
+        assertEquals(0, result.get("missed").getAsLong());
+        assertSequences(result, 1, 2, 3);
+        JsonObject second = result.getAsJsonArray("messages").get(1).getAsJsonObject();
+        assertEquals(10, second.get("tick").getAsInt());
+        assertEquals(PUBLIC, second.get("type").getAsString());
+        assertEquals("Zezima", second.get("name").getAsString());
+        assertEquals("b", second.get("message").getAsString());
+
+        assertSequences(log.after(1, null, 100), 2, 3);
+        assertSequences(log.after(3, null, 100));
+    }
+
+    @Test
+    public void overwritesTheOldestAtCapacity() {
+        ChatLog log = new ChatLog(4);
+        for (int i = 1; i <= 6; i++) {
+            log.add(i, GAME, "", "message " + i);
+        }
+
+        JsonObject result = log.after(0, null, 100);
+        assertSequences(result, 3, 4, 5, 6);
+        assertEquals(6, result.get("last").getAsLong());
+        assertEquals(2, result.get("missed").getAsLong());
+    }
+
+    @Test
+    public void afterPastTheOldestRetained() {
+        ChatLog log = new ChatLog(4);
+        for (int i = 1; i <= 10; i++) {
+            log.add(i, GAME, "", "message " + i);
+        }
+
+        // 5 and 6 were overwritten
+        JsonObject result = log.after(4, null, 100);
+        assertSequences(result, 7, 8, 9, 10);
+        assertEquals(2, result.get("missed").getAsLong());
+
+        assertEquals(0, log.after(6, null, 100).get("missed").getAsLong());
+        assertEquals(6, log.after(-5, null, 100).get("missed").getAsLong());
+
+        // A sequence that was not handed out yet returns nothing and is answered with the last one
+        JsonObject future = log.after(20, null, 100);
+        assertSequences(future);
+        assertEquals(10, future.get("last").getAsLong());
+        assertEquals(0, future.get("missed").getAsLong());
+    }
+
+    @Test
+    public void limitContinuesAfterTheLastReturned() {
+        ChatLog log = new ChatLog(8);
+        for (int i = 1; i <= 5; i++) {
+            log.add(i, GAME, "", "message " + i);
+        }
+
+        JsonObject first = log.after(0, null, 2);
+        assertSequences(first, 1, 2);
+        assertEquals(2, first.get("last").getAsLong());
+        JsonObject second = log.after(first.get("last").getAsLong(), null, 2);
+        assertSequences(second, 3, 4);
+        JsonObject third = log.after(second.get("last").getAsLong(), null, 2);
+        assertSequences(third, 5);
+        assertEquals(5, third.get("last").getAsLong());
+    }
+
+    @Test
+    public void typeFilter() {
+        ChatLog log = new ChatLog(8);
+        log.add(1, GAME, "", "a");
+        log.add(1, PUBLIC, "Zezima", "b");
+        log.add(2, GAME, "", "c");
+        log.add(2, PUBLIC, "Zezima", "d");
+        log.add(3, GAME, "", "e");
+
+        JsonObject result = log.after(0, Collections.singleton(PUBLIC), 100);
+        assertSequences(result, 2, 4);
+        // Skipped messages of other types are not asked for again
+        assertEquals(5, result.get("last").getAsLong());
+
+        JsonObject limited = log.after(0, Collections.singleton(GAME), 2);
+        assertSequences(limited, 1, 3);
+        assertEquals(3, limited.get("last").getAsLong());
+    }
+
+    private static void assertSequences(JsonObject result, long... sequences) {
+        JsonArray messages = result.getAsJsonArray("messages");
+        assertEquals(messages.toString(), sequences.length, messages.size());
+        for (int i = 0; i < sequences.length; i++) {
+            assertEquals(sequences[i], messages.get(i).getAsJsonObject().get("seq").getAsLong());
+        }
+    }
+}
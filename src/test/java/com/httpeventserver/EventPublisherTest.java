@@ -0,0 +1,244 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventPublisherTest {
+    private HttpServer sink;
+    private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+    // Status codes the sink answers with, 200 once they ran out
+    private final BlockingQueue<Integer> codes = new LinkedBlockingQueue<>();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private final List<EventPublisher> publishers = new ArrayList<>();
+
+    @Before
+    public void startSink() throws IOException {
+        sink = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        sink.createContext("/events", exchange -> {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = readAll(in);
+            }
+            batches.add(new Batch(System.nanoTime(), exchange.getRequestHeaders().getFirst("Content-Type"),
+                    new JsonParser().parse(new String(body, StandardCharsets.UTF_8)).getAsJsonArray()));
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Integer code = codes.poll();
+            exchange.sendResponseHeaders(code != null ? code : 200, -1);
+            exchange.close();
+        });
+        sink.start();
+    }
+
+    @After
+    public void stopSink() {
+        release.countDown();
+        for (EventPublisher publisher : publishers) {
+            publisher.shutdown();
+        }
+        sink.stop(0);
+    }
+
+    @Test
+    public void targetsThatAreNotSupported() {
+        assertNull(EventPublisher.create(null, 10, 10));
+        assertNull(EventPublisher.create(" ", 10, 10));
+        assertNull(EventPublisher.create("ftp://localhost/events", 10, 10));
+    }
+
+    @Test
+    public void eventFormat() throws InterruptedException {
+        EventPublisher publisher = publisher(10, 0);
+        Thread client = Thread.currentThread();
+        Thread[] serializedOn = new Thread[1];
+        long before = System.currentTimeMillis();
+        publisher.publish("chat", 42, () -> {
+            serializedOn[0] = Thread.currentThread();
+            return new JsonPrimitive("hello");
+        });
+
+        Batch batch = next();
+        assertEquals(CachedResponse.JSON, batch.contentType);
+        assertEquals(1, batch.events.size());
+        JsonObject event = batch.events.get(0).getAsJsonObject();
+        assertEquals("chat", event.get("type").getAsString());
+        assertEquals(42, event.get("tick").getAsInt());
+        assertTrue(event.get("time").getAsLong() >= before);
+        assertEquals("hello", event.get("data").getAsString());
+        // The data is built by the publisher thread, not by whoever published it
+        assertNotNull(serializedOn[0]);
+        assertTrue(serializedOn[0] != client);
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaiting() throws InterruptedException {
+        EventPublisher publisher = publisher(3, 500);
+        for (int i = 0; i < 7; i++) {
+            publisher.publish("tick", i, data(i));
+        }
+        Batch first = next();
+        Batch second = next();
+        Batch third = next();
+        assertEquals("[0,1,2]", ticks(first));
+        assertEquals("[3,4,5]", ticks(second));
+        assertEquals("[6]", ticks(third));
+        // The last one waited for the batch window to pass
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(third.received - second.received) >= 400);
+        waitForCounter(publisher, "sent", 7);
+        assertEquals(0, publisher.toJson().get("queued").getAsInt());
+    }
+
+    @Test
+    public void batchWindowCollectsEvents() throws InterruptedException {
+        EventPublisher publisher = publisher(100, 200);
+        publisher.publish("tick", 1, data(1));
+        publisher.publish("tick", 2, data(2));
+        assertEquals("[1,2]", ticks(next()));
+        publisher.publish("tick", 3, data(3));
+        assertEquals("[3]", ticks(next()));
+    }
+
+    @Test
+    public void fullQueueDropsTheOldestEvents() throws InterruptedException {
+        EventPublisher publisher = publisher(1000, 0);
+        release = new CountDownLatch(1);
+        publisher.publish("tick", -1, data(-1));
+        // The publisher thread waits for the sink while the queue fills up
+        assertEquals("[-1]", ticks(next()));
+        for (int i = 0; i < 10_005; i++) {
+            publisher.publish("tick", i, data(i));
+        }
+        JsonObject counters = publisher.toJson();
+        assertEquals(10_006, counters.get("published").getAsLong());
+        assertEquals(5, counters.get("dropped").getAsLong());
+        assertEquals(10_000, counters.get("queued").getAsInt());
+
+        release.countDown();
+        Batch batch = next();
+        assertEquals(1000, batch.events.size());
+        assertEquals(5, batch.events.get(0).getAsJsonObject().get("tick").getAsInt());
+        waitForCounter(publisher, "sent", 10_001);
+    }
+
+    @Test
+    public void failedBatchIsRetriedWithBackoff() throws InterruptedException {
+        EventPublisher publisher = publisher(10, 0);
+        codes.add(500);
+        codes.add(503);
+        publisher.publish("tick", 1, data(1));
+        Batch first = next();
+        Batch second = next();
+        Batch third = next();
+        assertEquals(ticks(first), ticks(third));
+        // 500 ms before the second attempt, twice that before the third
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(second.received - first.received) >= 450);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(third.received - second.received) >= 950);
+        waitForCounter(publisher, "sent", 1);
+        assertEquals(0, publisher.toJson().get("dropped").getAsLong());
+    }
+
+    @Test
+    public void batchIsDroppedAfterThreeAttempts() throws InterruptedException {
+        EventPublisher publisher = publisher(10, 200);
+        for (int i = 0; i < 3; i++) {
+            codes.add(500);
+        }
+        publisher.publish("tick", 1, data(1));
+        publisher.publish("tick", 2, data(2));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("[1,2]", ticks(next()));
+        }
+        waitForCounter(publisher, "dropped", 2);
+        assertEquals(0, publisher.toJson().get("sent").getAsLong());
+
+        // The next batch is sent as usual
+        publisher.publish("tick", 3, data(3));
+        assertEquals("[3]", ticks(next()));
+        waitForCounter(publisher, "sent", 1);
+        assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private EventPublisher publisher(int batchSize, int batchMillis) {
+        EventPublisher publisher = EventPublisher.create(
+                "http://localhost:" + sink.getAddress().getPort() + "/events", batchSize, batchMillis);
+        assertNotNull(publisher);
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    private Batch next() throws InterruptedException {
+        Batch batch = batches.poll(10, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        return batch;
+    }
+
+    private static Supplier<JsonElement> data(int value) {
+        return () -> new JsonPrimitive(value);
+    }
+
+    private static String ticks(Batch batch) {
+        JsonArray ticks = new JsonArray();
+        for (JsonElement event : batch.events) {
+            ticks.add(event.getAsJsonObject().get("tick"));
+        }
+        return ticks.toString();
+    }
+
+    private static void waitForCounter(EventPublisher publisher, String counter, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (publisher.toJson().get(counter).getAsLong() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, publisher.toJson().get(counter).getAsLong());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Batch {
+        private final long received;
+        private final String contentType;
+        private final JsonArray events;
+
+        private Batch(long received, String contentType, JsonArray events) {
+            this.received = received;
+            this.contentType = contentType;
+            this.events = events;
+        }
+    }
+}
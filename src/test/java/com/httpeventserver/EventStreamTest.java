@@ -0,0 +1,138 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EventStreamTest {
+    private EventStream stream;
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        stream = new EventStream(1);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/chat", exchange -> {
+            if (!stream.subscribe(exchange, Collections.singleton(EventStream.CHAT))) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        stream.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void frameFormat() {
+        assertEquals("event: chat\nid: 7\ndata: {\"a\":1}\n\n",
+                text(EventStream.frame(EventStream.CHAT, 7, bytes("{\"a\":1}"))));
+    }
+
+    @Test
+    public void waitingTickIsReplacedByTheNextOne() throws InterruptedException {
+        EventStream.Backlog backlog = new EventStream.Backlog(8);
+        backlog.offer(EventStream.TICK, bytes("tick 1"));
+        backlog.offer(EventStream.CHAT, bytes("chat 1"));
+        backlog.offer(EventStream.TICK, bytes("tick 2"));
+        backlog.offer(EventStream.LOOT, bytes("loot 1"));
+
+        assertEquals("chat 1", text(backlog.take(1000)));
+        assertEquals("tick 2", text(backlog.take(1000)));
+        assertEquals("loot 1", text(backlog.take(1000)));
+        assertEquals(1, backlog.dropped());
+    }
+
+    @Test
+    public void chatAndLootAreNeverCoalesced() throws InterruptedException {
+        EventStream.Backlog backlog = new EventStream.Backlog(8);
+        backlog.offer(EventStream.CHAT, bytes("chat 1"));
+        backlog.offer(EventStream.CHAT, bytes("chat 2"));
+        assertEquals("chat 1", text(backlog.take(1000)));
+        assertEquals("chat 2", text(backlog.take(1000)));
+        assertEquals(0, backlog.dropped());
+    }
+
+    @Test
+    public void fullBacklogDropsTheOldestFrame() throws InterruptedException {
+        EventStream.Backlog backlog = new EventStream.Backlog(2);
+        backlog.offer(EventStream.CHAT, bytes("chat 1"));
+        backlog.offer(EventStream.CHAT, bytes("chat 2"));
+        backlog.offer(EventStream.CHAT, bytes("chat 3"));
+        assertEquals("chat 2", text(backlog.take(1000)));
+        assertEquals("chat 3", text(backlog.take(1000)));
+        assertEquals(1, backlog.dropped());
+    }
+
+    @Test
+    public void keepAliveWhenNothingCame() throws InterruptedException {
+        EventStream.Backlog backlog = new EventStream.Backlog(2);
+        assertEquals(": keep-alive\n\n", text(backlog.take(10)));
+    }
+
+    @Test
+    public void closedBacklog() throws InterruptedException {
+        EventStream.Backlog backlog = new EventStream.Backlog(2);
+        backlog.offer(EventStream.TICK, bytes("tick 1"));
+        backlog.offer(EventStream.TICK, bytes("tick 2"));
+        assertEquals(1, backlog.close());
+        assertEquals(-1, backlog.close());
+        backlog.offer(EventStream.CHAT, bytes("chat 1"));
+        assertNull(backlog.take(1000));
+    }
+
+    @Test
+    public void subscribersOnlyGetTheirTopics() throws IOException {
+        HttpURLConnection connection = open();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/event-stream; charset=utf-8", connection.getHeaderField("Content-Type"));
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            stream.publish(EventStream.TICK, 1, () -> bytes("tick"));
+            stream.publish(EventStream.LOOT, 2, () -> bytes("loot"));
+            stream.publish(EventStream.CHAT, 3, () -> bytes("chat"));
+            assertEquals(Arrays.asList("event: chat", "id: 3", "data: chat", ""),
+                    Arrays.asList(in.readLine(), in.readLine(), in.readLine(), in.readLine()));
+        }
+    }
+
+    @Test
+    public void subscribersAreCapped() throws IOException {
+        HttpURLConnection first = open();
+        assertEquals(200, first.getResponseCode());
+        HttpURLConnection second = open();
+        assertEquals(503, second.getResponseCode());
+        first.disconnect();
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + "/chat").openConnection();
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
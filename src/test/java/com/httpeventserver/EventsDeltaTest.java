@@ -0,0 +1,103 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventsDeltaTest {
+    @Test
+    public void unchangedSnapshotsOnlyCarryTheVersions() {
+        LootLog.View loot = new LootLog(4).view();
+        JsonObject delta = EventsDelta.build(snapshot(3, 10, 99, loot), snapshot(5, 10, 99, loot));
+
+        assertEquals(5, delta.get("version").getAsLong());
+        assertEquals(3, delta.get("since").getAsLong());
+        assertFalse(delta.get("full").getAsBoolean());
+        assertEquals(0, delta.getAsJsonArray("lootAdded").size());
+        assertEquals(0, delta.get("lootRemoved").getAsInt());
+        assertFalse(delta.has("playerObject"));
+        assertFalse(delta.has("npcObject"));
+        assertFalse(delta.has("lootArray"));
+    }
+
+    @Test
+    public void changedFieldsAreNested() {
+        LootLog.View loot = new LootLog(4).view();
+        JsonObject delta = EventsDelta.build(snapshot(3, 10, 99, loot), snapshot(4, 11, 80, loot));
+
+        assertEquals(11, delta.get("tickCount").getAsInt());
+        JsonObject player = delta.getAsJsonObject("playerObject");
+        assertEquals(1, player.size());
+        assertEquals(80, player.get("currentHealth").getAsInt());
+        assertFalse(delta.has("camera"));
+    }
+
+    @Test
+    public void lootAddedAndRemoved() {
+        LootLog log = new LootLog(8);
+        log.add(1, 3029, "Goblin", "a", new int[]{526}, new int[]{1});
+        log.add(2, 3029, "Goblin", "a", new int[]{995}, new int[]{12});
+        GameStateSnapshot before = snapshot(3, 2, 99, log.view());
+
+        log.expire(2 + LootLog.EXPIRY_TICKS);
+        log.add(210, 3030, "Cow", "b", new int[]{1739}, new int[]{1});
+        log.add(211, 3030, "Cow", "b", new int[]{2132}, new int[]{1});
+        JsonObject delta = EventsDelta.build(before, snapshot(4, 211, 99, log.view()));
+
+        assertEquals(1, delta.get("lootRemoved").getAsInt());
+        JsonArray added = delta.getAsJsonArray("lootAdded");
+        assertEquals(2, added.size());
+        assertEquals(210, added.get(0).getAsJsonObject().get("tickCount").getAsInt());
+        assertEquals(211, added.get(1).getAsJsonObject().get("tickCount").getAsInt());
+    }
+
+    @Test
+    public void fullPayloadIsMarked() {
+        LootLog log = new LootLog(4);
+        log.add(1, 3029, "Goblin", "a", new int[]{526}, new int[]{1});
+        GameStateSnapshot state = snapshot(7, 1, 99, log.view());
+
+        JsonObject full = EventsDelta.full(state);
+        assertTrue(full.get("full").getAsBoolean());
+        assertEquals(7, full.get("version").getAsLong());
+        assertEquals(1, full.getAsJsonArray("lootArray").size());
+        full.remove("full");
+        assertEquals(PayloadSerializer.events(state), full);
+    }
+
+    @Test
+    public void basesComeFromTheHistoryRing() {
+        SnapshotHistory history = new SnapshotHistory(4);
+        LootLog.View loot = new LootLog(4).view();
+        for (int version = 1; version <= 6; version++) {
+            history.add(snapshot(version, version, 99, loot));
+        }
+
+        // Versions 1 and 2 were overwritten, their delta falls back to a full payload
+        assertNull(history.get(1));
+        assertNull(history.get(2));
+        assertEquals(3, history.get(3).version);
+        assertEquals(6, history.get(6).version);
+        assertNull(history.get(7));
+        assertNull(history.get(-1));
+
+        GameStateSnapshot base = history.get(3);
+        assertSame(base, history.get(3));
+        history.clear();
+        assertNull(history.get(3));
+    }
+
+    private static GameStateSnapshot snapshot(long version, int tick, int health, LootLog.View loot) {
+        GameStateSnapshot.PlayerState player = new GameStateSnapshot.PlayerState(808, 808, "null", 100, 100,
+                50, 50, health, 99, new GameStateSnapshot.Coordinates(3222, 3218, 0, 12850, 22, 18));
+        return new GameStateSnapshot(version, 0, 0, tick, tick * 30, null, null, 0, null, null, null,
+                player, GameStateSnapshot.NpcState.NONE, GameStateSnapshot.CameraState.NONE,
+                null, null, BankIndex.EMPTY, loot, NpcTracker.View.EMPTY);
+    }
+}
@@ -0,0 +1,106 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventsProjectionTest {
+    private static final GameStateSnapshot STATE = new GameStateSnapshot(7, 0, 0, 42, 1260, "Hello", "GAMEMESSAGE", 40,
+            true, null, null,
+            new GameStateSnapshot.PlayerState(808, 809, "3029", 90, 100, 43, 52, 80, 99,
+                    new GameStateSnapshot.Coordinates(3222, 3218, 0, 12850, 22, 18)),
+            new GameStateSnapshot.NpcState("Goblin", 3029, 2, 4, 5,
+                    new GameStateSnapshot.Coordinates(3223, 3219, 0, 12850, 23, 19)),
+            GameStateSnapshot.CameraState.NONE, null, null, BankIndex.EMPTY, LootLog.View.EMPTY,
+            NpcTracker.View.EMPTY);
+
+    @Test
+    public void allMatchesTheEventsPayload() {
+        JsonObject all = EventsProjection.ALL.apply(STATE);
+        assertEquals(PayloadSerializer.events(STATE), all);
+        assertTrue(all.has("lootArray"));
+        assertEquals(80, all.getAsJsonObject("playerObject").get("currentHealth").getAsInt());
+    }
+
+    @Test
+    public void dottedPathSelectsOneValue() {
+        JsonObject object = EventsProjection.forFields("playerObject.currentHealth").apply(STATE);
+        assertEquals("{\"playerObject\":{\"currentHealth\":80}}", object.toString());
+    }
+
+    @Test
+    public void deepPathsWholeObjectsAndValues() {
+        JsonObject object = EventsProjection.forFields("tickCount,npcObject,playerObject.playerCoordinates.x").apply(STATE);
+        assertEquals(3, object.size());
+        assertEquals(42, object.get("tickCount").getAsInt());
+        assertEquals(STATE.npc.name, object.getAsJsonObject("npcObject").get("name").getAsString());
+        assertEquals("{\"playerCoordinates\":{\"x\":3222}}", object.getAsJsonObject("playerObject").toString());
+    }
+
+    @Test
+    public void wholeObjectWinsOverItsChildren() {
+        JsonObject object = EventsProjection.forFields("playerObject.currentHealth,playerObject").apply(STATE);
+        assertEquals(EventsProjection.ALL.apply(STATE).get("playerObject"), object.get("playerObject"));
+    }
+
+    @Test
+    public void keysWithTrailingSpacesCanBeSelectedWithout() {
+        JsonObject npc = EventsProjection.forFields("npcObject.combatLevel,npcObject.maxHealth").apply(STATE)
+                .getAsJsonObject("npcObject");
+        // The payload keeps the original key names
+        assertEquals(2, npc.get("combatLevel ").getAsInt());
+        assertEquals(5, npc.get("maxHealth ").getAsInt());
+    }
+
+    @Test
+    public void keyIsNormalized() {
+        EventsProjection first = EventsProjection.forFields("playerObject.currentHealth, tickCount");
+        EventsProjection second = EventsProjection.forFields("tickCount,playerObject.currentHealth,tickCount");
+        assertEquals("tickCount,playerObject.currentHealth", first.key);
+        assertEquals(first.key, second.key);
+    }
+
+    @Test
+    public void unknownAndEmptyFieldListsAreRejected() {
+        for (String fields : new String[]{"bogus", "playerObject.bogus", "tickCount.x", "", " , "}) {
+            try {
+                EventsProjection.forFields(fields);
+                fail("Accepted " + fields);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void compiledPlansAreCachedUpToTheCap() {
+        String fields = "latestMsg,msgTick";
+        assertSame(EventsProjection.forFields(fields), EventsProjection.forFields(fields));
+
+        // Distinct field lists, well beyond the 128 plans that are kept
+        List<EventsProjection> plans = new ArrayList<>();
+        StringBuilder padded = new StringBuilder("gameCycle");
+        for (int i = 0; i < 200; i++) {
+            padded.append(",gameCycle");
+            plans.add(EventsProjection.forFields(padded.toString()));
+        }
+        assertEquals("gameCycle", plans.get(199).key);
+
+        // Cached plans stay, new ones are still compiled but no longer kept
+        assertSame(EventsProjection.forFields(fields), EventsProjection.forFields(fields));
+        String late = padded.append(",gameCycle").toString();
+        EventsProjection lateFirst = EventsProjection.forFields(late);
+        assertNotSame(lateFirst, EventsProjection.forFields(late));
+        assertEquals(lateFirst.apply(STATE), EventsProjection.forFields(late).apply(STATE));
+        assertFalse(lateFirst.apply(STATE).has("tickCount"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.httpeventserver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void valuesBelowEightAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, histogram.percentile((value + 1) / 8.0));
+            assertEquals(value + 1, histogram.countAtOrBelow(value));
+        }
+    }
+
+    @Test
+    public void firstPowerOfTwoIsExact() {
+        for (int value = 8; value < 16; value++) {
+            assertEquals(value, highestEquivalentValue(value));
+        }
+    }
+
+    @Test
+    public void subBucketBoundaries() {
+        // From 16 on every power of two is split into 8 buckets of equal width
+        assertEquals(17, highestEquivalentValue(16));
+        assertEquals(17, highestEquivalentValue(17));
+        assertEquals(19, highestEquivalentValue(18));
+        assertEquals(31, highestEquivalentValue(30));
+        assertEquals(35, highestEquivalentValue(32));
+        assertEquals(1023, highestEquivalentValue(960));
+        assertEquals(1023, highestEquivalentValue(1023));
+        assertEquals(1151, highestEquivalentValue(1024));
+    }
+
+    @Test
+    public void countAtOrBelowStopsAtBucketEdges() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1023);
+        histogram.record(1024);
+        histogram.record(1151);
+        histogram.record(1152);
+
+        assertEquals(0, histogram.countAtOrBelow(-1));
+        assertEquals(0, histogram.countAtOrBelow(959));
+        assertEquals(1, histogram.countAtOrBelow(1023));
+        // 1024 shares its bucket with values up to 1151, which are not all at or below 1024
+        assertEquals(1, histogram.countAtOrBelow(1024));
+        assertEquals(1, histogram.countAtOrBelow(1150));
+        assertEquals(3, histogram.countAtOrBelow(1151));
+        assertEquals(4, histogram.countAtOrBelow(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void relativeErrorIsBelowOneEighth() {
+        for (long value = 1; value < 1L << 40; value = value * 3 + 1) {
+            long equivalent = highestEquivalentValue(value);
+            assertTrue(value + " -> " + equivalent, equivalent >= value);
+            assertTrue(value + " -> " + equivalent, equivalent - value < Math.max(1, value / 8));
+        }
+    }
+
+    @Test
+    public void percentileIsCappedAtMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        assertEquals(1000, histogram.percentile(0.5));
+        assertEquals(1000, histogram.percentile(1));
+    }
+
+    @Test
+    public void countSumAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+        histogram.record(-5);
+        histogram.record(100);
+        histogram.record(2_000_000);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(2_000_100, histogram.getSum());
+        assertEquals(2_000_000, histogram.getMax());
+        assertEquals(0, histogram.percentile(0.1));
+    }
+
+    /**
+     * The highest value recorded in the same bucket as the value, read through percentile which
+     * returns it for the lower of two recorded values.
+     */
+    private static long highestEquivalentValue(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(1L << 40);
+        return histogram.percentile(0.5);
+    }
+}
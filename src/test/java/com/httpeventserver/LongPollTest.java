@@ -0,0 +1,176 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongPollTest {
+    private LongPoll longPoll;
+    private Metrics metrics;
+    private HttpServer server;
+    private ExecutorService clients;
+
+    @Before
+    public void startServer() throws IOException {
+        longPoll = new LongPoll(2);
+        metrics = new Metrics();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // Waits for the tick or event in the query, with the timeout in the path
+        server.createContext("/poll", metrics.instrument("/poll", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            long timeout = Long.parseLong(exchange.getRequestURI().getPath().substring("/poll/".length()));
+            boolean event = LongPoll.EVENTS.contains(query);
+            boolean parked = longPoll.park(exchange, event ? 0 : Integer.parseInt(query), event ? query : null, timeout, () -> {
+                exchange.sendResponseHeaders(200, 2);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(new byte[]{'o', 'k'});
+                }
+            });
+            if (!parked) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            }
+        }));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        clients = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void stopServer() {
+        clients.shutdownNow();
+        longPoll.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void requestsWaitForTheirTick() throws Exception {
+        longPoll.tick(1);
+        assertEquals(2, longPoll.nextTick());
+        Future<Integer> second = clients.submit(() -> code("/poll/5000?2"));
+        Future<Integer> third = clients.submit(() -> code("/poll/5000?3"));
+        waitForParked(2);
+
+        longPoll.tick(2);
+        assertEquals(200, (int) second.get(5, TimeUnit.SECONDS));
+        assertFalse(third.isDone());
+        longPoll.tick(3);
+        assertEquals(200, (int) third.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void passedTickIsAnsweredOnTheCallingThread() {
+        longPoll.tick(5);
+        for (int tick : new int[]{4, 5}) {
+            Thread[] ranOn = new Thread[1];
+            assertTrue(longPoll.park(null, tick, null, 5000, () -> ranOn[0] = Thread.currentThread()));
+            assertEquals(Thread.currentThread(), ranOn[0]);
+        }
+    }
+
+    @Test
+    public void requestsWaitForTheirEvent() throws Exception {
+        Future<Integer> loot = clients.submit(() -> code("/poll/5000?loot"));
+        Future<Integer> chat = clients.submit(() -> code("/poll/5000?chat"));
+        waitForParked(2);
+        assertTrue(longPoll.hasWaiters(LongPoll.LOOT));
+        assertFalse(longPoll.hasWaiters(LongPoll.BANK));
+
+        // Ticks do not answer event waiters
+        longPoll.tick(100);
+        longPoll.signal(LongPoll.CHAT);
+        assertEquals(200, (int) chat.get(5, TimeUnit.SECONDS));
+        assertFalse(loot.isDone());
+        longPoll.signal(LongPoll.LOOT);
+        assertEquals(200, (int) loot.get(5, TimeUnit.SECONDS));
+        assertFalse(longPoll.hasWaiters(LongPoll.LOOT));
+    }
+
+    @Test
+    public void timeoutAnswersNoContent() throws Exception {
+        long start = System.nanoTime();
+        assertEquals(204, code("/poll/100?loot"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertFalse(longPoll.hasWaiters(LongPoll.LOOT));
+
+        // Signalling after the timeout does not answer it a second time
+        longPoll.signal(LongPoll.LOOT);
+    }
+
+    @Test
+    public void waitersAreCapped() throws InterruptedException {
+        CountDownLatch answered = new CountDownLatch(1024);
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(longPoll.park(null, 0, LongPoll.BANK, 60_000, answered::countDown));
+        }
+        assertFalse(longPoll.park(null, 0, LongPoll.BANK, 60_000, answered::countDown));
+        // A passed tick needs no waiter, it is still answered
+        boolean[] ran = new boolean[1];
+        assertTrue(longPoll.park(null, 0, null, 60_000, () -> ran[0] = true));
+        assertTrue(ran[0]);
+
+        longPoll.signal(LongPoll.BANK);
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        assertTrue(longPoll.park(null, 0, LongPoll.BANK, 60_000, () -> { }));
+        longPoll.signal(LongPoll.BANK);
+    }
+
+    @Test
+    public void latencyIncludesTheTimeParked() throws Exception {
+        Future<Integer> parked = clients.submit(() -> code("/poll/5000?chat"));
+        waitForParked(1);
+        Thread.sleep(300);
+        longPoll.signal(LongPoll.CHAT);
+        assertEquals(200, (int) parked.get(5, TimeUnit.SECONDS));
+
+        // The client has the body before the server closed the exchange, which is when it is counted
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"1".equals(sample("httpeventserver_requests_total{")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("1", sample("httpeventserver_requests_total{"));
+        String max = sample("httpeventserver_request_duration_seconds_max{");
+        assertTrue(max, Double.parseDouble(max) >= 0.3);
+    }
+
+    private String sample(String prefix) {
+        for (String line : metrics.render(null).split("\n")) {
+            if (line.startsWith(prefix)) {
+                return line.substring(line.lastIndexOf(' ') + 1);
+            }
+        }
+        return null;
+    }
+
+    private int code(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + path).openConnection();
+        connection.setReadTimeout(10_000);
+        int code = connection.getResponseCode();
+        connection.disconnect();
+        return code;
+    }
+
+    private void waitForParked(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (longPoll.waiting() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, longPoll.waiting());
+    }
+}
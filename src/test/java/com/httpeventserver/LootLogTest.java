@@ -0,0 +1,184 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class LootLogTest {
+    @Test
+    public void entryJson() {
+        LootLog log = new LootLog(4);
+        log.add(10, 3029, "Goblin", "a", new int[]{526, 995}, new int[]{1, 12});
+
+        JsonArray array = log.view().toJson();
+        assertEquals(1, array.size());
+        JsonObject entry = array.get(0).getAsJsonObject();
+        assertEquals(10, entry.get("tickCount").getAsInt());
+        assertEquals("a", entry.get("interactingCode").getAsString());
+        assertEquals("Goblin", entry.getAsJsonObject("npc").get("name").getAsString());
+        assertEquals(3029, entry.getAsJsonObject("npc").get("id").getAsInt());
+        assertEquals("[{\"id\":526,\"quantity\":1},{\"id\":995,\"quantity\":12}]", entry.get("loot").toString());
+    }
+
+    @Test
+    public void fullLogDropsTheOldest() {
+        LootLog log = new LootLog(4);
+        for (int tick = 1; tick <= 6; tick++) {
+            add(log, tick);
+        }
+        assertEquals(4, log.size());
+        assertTicks(log.view(), 3, 4, 5, 6);
+        assertEquals(2, log.view().first);
+        assertEquals(6, log.view().end());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        LootLog log = new LootLog(100);
+        for (int tick = 1; tick <= 1000; tick++) {
+            add(log, tick);
+        }
+        LootLog.View view = log.view();
+        assertEquals(100, view.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(901 + i, view.tick(i));
+            assertEquals(901 + i, view.npcId(i));
+        }
+    }
+
+    @Test
+    public void severalDropsExpireInOneTick() {
+        LootLog log = new LootLog(8);
+        add(log, 1);
+        add(log, 1);
+        add(log, 1);
+        add(log, 5);
+        add(log, 10);
+
+        log.expire(1 + LootLog.EXPIRY_TICKS + 1);
+        assertTicks(log.view(), 5, 10);
+
+        // A drop exactly EXPIRY_TICKS old is kept
+        log.expire(5 + LootLog.EXPIRY_TICKS);
+        assertTicks(log.view(), 5, 10);
+        log.expire(10 + LootLog.EXPIRY_TICKS + 1);
+        assertTicks(log.view());
+    }
+
+    @Test
+    public void expiryAfterWrapping() {
+        LootLog log = new LootLog(4);
+        for (int tick = 1; tick <= 6; tick++) {
+            add(log, tick);
+        }
+        log.expire(4 + LootLog.EXPIRY_TICKS + 1);
+        assertTicks(log.view(), 5, 6);
+        add(log, 300);
+        log.expire(6 + LootLog.EXPIRY_TICKS + 1);
+        assertTicks(log.view(), 300);
+    }
+
+    @Test
+    public void clearEmptiesTheLog() {
+        LootLog log = new LootLog(4);
+        add(log, 1);
+        add(log, 2);
+        LootLog.View before = log.view();
+        log.clear();
+        assertEquals(0, log.size());
+        assertTicks(log.view());
+        assertEquals(2, log.view().removedSince(before));
+
+        add(log, 3);
+        assertTicks(log.view(), 3);
+    }
+
+    @Test
+    public void viewIsSharedUntilTheLogChanges() {
+        LootLog log = new LootLog(4);
+        add(log, 1);
+        LootLog.View view = log.view();
+        log.expire(2);
+        log.clear();
+        log.clear();
+        assertNotSame(view, log.view());
+
+        LootLog empty = new LootLog(4);
+        assertSame(LootLog.View.EMPTY, empty.view());
+        empty.expire(1000);
+        empty.clear();
+        assertSame(LootLog.View.EMPTY, empty.view());
+
+        add(log, 2);
+        LootLog.View current = log.view();
+        log.expire(3);
+        assertSame(current, log.view());
+    }
+
+    @Test
+    public void oldViewsAreNotChangedByLaterDrops() {
+        LootLog log = new LootLog(4);
+        for (int tick = 1; tick <= 3; tick++) {
+            add(log, tick);
+        }
+        LootLog.View old = log.view();
+        JsonArray json = old.toJson();
+        for (int tick = 4; tick <= 500; tick++) {
+            add(log, tick);
+        }
+        log.expire(1000);
+        assertTicks(old, 1, 2, 3);
+        assertEquals("Npc 2", old.npcName(1));
+        assertSame(json, old.toJson());
+    }
+
+    @Test
+    public void addedAndRemovedSince() {
+        LootLog log = new LootLog(4);
+        add(log, 1);
+        add(log, 2);
+        LootLog.View before = log.view();
+
+        log.expire(1 + LootLog.EXPIRY_TICKS + 1);
+        add(log, 300);
+        add(log, 301);
+        LootLog.View after = log.view();
+        assertEquals(1, after.removedSince(before));
+        assertEntryTicks(after.addedSince(before), 300, 301);
+        assertEquals(0, after.removedSince(after));
+        assertEquals(0, after.addedSince(after).size());
+
+        // Wrapping past everything in the older view
+        for (int tick = 302; tick <= 310; tick++) {
+            add(log, tick);
+        }
+        LootLog.View wrapped = log.view();
+        assertEquals(after.size(), wrapped.removedSince(after));
+        assertEntryTicks(wrapped.addedSince(after), 307, 308, 309, 310);
+        assertEquals(0, wrapped.removedSince(LootLog.View.EMPTY));
+        assertEquals(4, wrapped.addedSince(LootLog.View.EMPTY).size());
+    }
+
+    private static void add(LootLog log, int tick) {
+        log.add(tick, tick, "Npc " + tick, "a", new int[]{526}, new int[]{1});
+    }
+
+    private static void assertTicks(LootLog.View view, int... ticks) {
+        assertEquals(ticks.length, view.size());
+        for (int i = 0; i < ticks.length; i++) {
+            assertEquals(ticks[i], view.tick(i));
+        }
+        assertEntryTicks(view.toJson(), ticks);
+    }
+
+    private static void assertEntryTicks(JsonArray array, int... ticks) {
+        assertEquals(ticks.length, array.size());
+        for (int i = 0; i < ticks.length; i++) {
+            assertEquals(ticks[i], array.get(i).getAsJsonObject().get("tickCount").getAsInt());
+        }
+    }
+}
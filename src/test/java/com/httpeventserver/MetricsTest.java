@@ -0,0 +1,77 @@
+package com.httpeventserver;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+    private static final String NAME = "httpeventserver_tick_hook_duration_seconds";
+
+    @Test
+    public void rendersHistogram() {
+        Metrics metrics = new Metrics();
+        LatencyHistogram hook = metrics.tickHook("onGameTick");
+        hook.record(4_095);
+        hook.record(4_096);
+        hook.record(1_000_000);
+        hook.record(10_000_000_000L);
+
+        List<String> lines = Arrays.asList(metrics.render(null).split("\n"));
+        assertTrue(lines.contains("# TYPE " + NAME + " histogram"));
+        // le is inclusive, 4095 ns is the largest value in the first bucket and 4096 ns is in the next
+        assertTrue(lines.contains(NAME + "_bucket{hook=\"onGameTick\",le=\"0.000004095\"} 1"));
+        assertTrue(lines.contains(NAME + "_bucket{hook=\"onGameTick\",le=\"0.000016383\"} 2"));
+        assertTrue(lines.contains(NAME + "_bucket{hook=\"onGameTick\",le=\"0.001048575\"} 3"));
+        assertTrue(lines.contains(NAME + "_bucket{hook=\"onGameTick\",le=\"4.294967295\"} 3"));
+        assertTrue(lines.contains(NAME + "_bucket{hook=\"onGameTick\",le=\"+Inf\"} 4"));
+        assertTrue(lines.contains(NAME + "_sum{hook=\"onGameTick\"} 10.001008191"));
+        assertTrue(lines.contains(NAME + "_count{hook=\"onGameTick\"} 4"));
+        assertTrue(lines.contains(NAME + "_max{hook=\"onGameTick\"} 10.000000000"));
+    }
+
+    @Test
+    public void bucketsAreCumulative() {
+        Metrics metrics = new Metrics();
+        LatencyHistogram hook = metrics.tickHook("onGameTick");
+        for (long nanos = 1; nanos < 1L << 33; nanos *= 3) {
+            hook.record(nanos);
+        }
+
+        List<Long> buckets = new ArrayList<>();
+        for (String line : metrics.render(null).split("\n")) {
+            if (line.startsWith(NAME + "_bucket")) {
+                buckets.add(Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)));
+            }
+        }
+        assertEquals(12, buckets.size());
+        for (int i = 1; i < buckets.size(); i++) {
+            assertTrue(buckets.toString(), buckets.get(i) >= buckets.get(i - 1));
+        }
+        assertEquals(hook.getCount(), (long) buckets.get(buckets.size() - 1));
+    }
+
+    @Test
+    public void valueOnTheLabelIsCounted() {
+        Metrics metrics = new Metrics();
+        LatencyHistogram hook = metrics.tickHook("onGameTick");
+        hook.record(16_383);
+        hook.record(16_384);
+
+        for (String line : metrics.render(null).split("\n")) {
+            if (line.startsWith(NAME + "_bucket")) {
+                String le = line.substring(line.indexOf("le=\"") + 4, line.lastIndexOf('"'));
+                if (!le.equals("+Inf")) {
+                    // Every value at or below the label is in the bucket, every value above it is not
+                    long bound = Math.round(Double.parseDouble(le) * 1e9);
+                    long expected = (bound >= 16_384 ? 1 : 0) + (bound >= 16_383 ? 1 : 0);
+                    assertEquals(line, expected, Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)));
+                }
+            }
+        }
+    }
+}
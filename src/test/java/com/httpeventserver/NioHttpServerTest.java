@@ -0,0 +1,419 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NioHttpServerTest {
+    private static final int BIG_SIZE = 2 * 1024 * 1024;
+
+    private NioHttpServer server;
+    private ExecutorService executor;
+    private int port;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new NioHttpServer(new InetSocketAddress("localhost", 0), 0, 16);
+        server.createContext("/echo", exchange -> {
+            byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                    + readAll(exchange.getRequestBody()).length).getBytes(StandardCharsets.UTF_8);
+            respond(exchange, body);
+        });
+        server.createContext("/chunked", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("first,".getBytes(StandardCharsets.UTF_8));
+                out.write("second".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/big", exchange -> respond(exchange, big()));
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+        port = server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void keepAlive() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            for (int i = 0; i < 3; i++) {
+                send(socket, "GET /echo/" + i + " HTTP/1.1\r\nHost: x\r\n\r\n");
+                Response response = Response.read(socket.getInputStream());
+                assertEquals(200, response.code);
+                assertNull(response.headers.get("connection"));
+                assertEquals("GET /echo/" + i + " 0", response.text());
+            }
+        }
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        // More requests than are parsed ahead, so reading has to pause and resume
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            requests.append("GET /echo/").append(i).append(" HTTP/1.1\r\nHost: x\r\n\r\n");
+        }
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, requests.toString());
+            InputStream in = socket.getInputStream();
+            for (int i = 0; i < 50; i++) {
+                assertEquals("GET /echo/" + i + " 0", Response.read(in).text());
+            }
+        }
+    }
+
+    @Test
+    public void requestBodySplitOverSeveralReads() throws Exception {
+        byte[] body = new byte[40_000];
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: " + body.length + "\r\n\r\n");
+            OutputStream out = socket.getOutputStream();
+            for (int offset = 0; offset < body.length; offset += 10_000) {
+                out.write(body, offset, 10_000);
+                out.flush();
+                Thread.sleep(20);
+            }
+            send(socket, "GET /echo/after HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("POST /echo " + body.length, Response.read(in).text());
+            assertEquals("GET /echo/after 0", Response.read(in).text());
+        }
+    }
+
+    @Test
+    public void chunkedResponse() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "GET /chunked HTTP/1.1\r\nHost: x\r\n\r\n");
+            Response response = Response.read(socket.getInputStream());
+            assertEquals("chunked", response.headers.get("transfer-encoding"));
+            assertEquals("first,second", response.text());
+
+            // The connection stays usable after the last chunk
+            send(socket, "GET /echo HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("GET /echo 0", Response.read(socket.getInputStream()).text());
+        }
+    }
+
+    @Test
+    public void http10BodyEndsWithTheConnection() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "GET /chunked HTTP/1.0\r\n\r\n");
+            Response response = Response.read(socket.getInputStream());
+            assertEquals("HTTP/1.0", response.protocol);
+            assertNull(response.headers.get("transfer-encoding"));
+            assertEquals("close", response.headers.get("connection"));
+            assertEquals("first,second", response.text());
+        }
+    }
+
+    @Test
+    public void http10KeepAlive() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "GET /echo/1 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+            Response response = Response.read(socket.getInputStream());
+            assertEquals("keep-alive", response.headers.get("connection"));
+            assertEquals("GET /echo/1 0", response.text());
+
+            send(socket, "GET /echo/2 HTTP/1.0\r\n\r\n");
+            assertEquals("GET /echo/2 0", Response.read(socket.getInputStream()).text());
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void oversizeHeaderIsRejected() throws IOException {
+        StringBuilder header = new StringBuilder("GET /echo HTTP/1.1\r\nHost: x\r\nX-Large: ");
+        for (int i = 0; i < 20_000; i++) {
+            header.append('a');
+        }
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, header.toString());
+            Response response = Response.read(socket.getInputStream());
+            assertEquals(431, response.code);
+            assertEquals("close", response.headers.get("connection"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void oversizeBodyIsRejected() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 1000000\r\n\r\n");
+            Response response = Response.read(socket.getInputStream());
+            assertEquals(413, response.code);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void chunkedRequestBodyIsRejected() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+            assertEquals(411, Response.read(socket.getInputStream()).code);
+        }
+    }
+
+    @Test
+    public void slowReaderGetsEveryByte() throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress("localhost", port));
+            send(socket, "GET /big HTTP/1.1\r\nHost: x\r\n\r\nGET /echo HTTP/1.1\r\nHost: x\r\n\r\n");
+            // Let the writer run into the pending limit before anything is read
+            Thread.sleep(200);
+            InputStream in = new SlowInputStream(socket.getInputStream());
+            Response response = Response.read(in);
+            assertEquals(String.valueOf(BIG_SIZE), response.headers.get("content-length"));
+            assertArrayEquals(big(), response.body);
+            assertEquals("GET /echo 0", Response.read(in).text());
+        }
+    }
+
+    @Test
+    public void unknownPathKeepsTheConnection() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "GET /missing HTTP/1.1\r\nHost: x\r\n\r\n");
+            Response response = Response.read(socket.getInputStream());
+            assertEquals(404, response.code);
+            assertNull(response.headers.get("connection"));
+            send(socket, "GET /echo HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("GET /echo 0", Response.read(socket.getInputStream()).text());
+        }
+    }
+
+    @Test
+    public void expectContinueIsAnswered() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nExpect: 100-continue\r\nContent-Length: 5\r\n\r\n");
+            // An interim response has no body
+            assertEquals("HTTP/1.1 100 Continue", Response.line(socket.getInputStream()));
+            assertEquals("", Response.line(socket.getInputStream()));
+            send(socket, "hello");
+            assertEquals("POST /echo 5", Response.read(socket.getInputStream()).text());
+        }
+    }
+
+    @Test
+    public void filtersAndAuthenticatorRun() throws IOException {
+        HttpContext context = server.createContext("/secret", exchange -> respond(exchange,
+                exchange.getPrincipal().getUsername().getBytes(StandardCharsets.UTF_8)));
+        context.getFilters().add(new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                exchange.getResponseHeaders().set("X-Filtered", "yes");
+                chain.doFilter(exchange);
+            }
+
+            @Override
+            public String description() {
+                return "Adds X-Filtered";
+            }
+        });
+        context.setAuthenticator(new Authenticator() {
+            @Override
+            public Result authenticate(HttpExchange exchange) {
+                String user = exchange.getRequestHeaders().getFirst("X-User");
+                return user != null ? new Success(new HttpPrincipal(user, "test")) : new Failure(401);
+            }
+        });
+        try (Socket socket = new Socket("localhost", port)) {
+            send(socket, "GET /secret HTTP/1.1\r\nHost: x\r\n\r\n");
+            Response denied = Response.read(socket.getInputStream());
+            assertEquals(401, denied.code);
+            assertNull(denied.headers.get("x-filtered"));
+
+            send(socket, "GET /secret HTTP/1.1\r\nHost: x\r\nX-User: zezima\r\n\r\n");
+            Response allowed = Response.read(socket.getInputStream());
+            assertEquals(200, allowed.code);
+            assertEquals("yes", allowed.headers.get("x-filtered"));
+            assertEquals("zezima", allowed.text());
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreClosed() throws Exception {
+        NioHttpServer idle = new NioHttpServer(new InetSocketAddress("localhost", 0), 0, 16, 200);
+        idle.createContext("/echo", exchange -> respond(exchange, new byte[]{'o', 'k'}));
+        // Answers well after the idle timeout, a request in progress is not idle
+        idle.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(600);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, new byte[]{'o', 'k'});
+        });
+        idle.setExecutor(executor);
+        idle.start();
+        try (Socket socket = new Socket("localhost", idle.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            send(socket, "GET /slow HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("ok", Response.read(socket.getInputStream()).text());
+
+            long start = System.nanoTime();
+            assertEquals(-1, socket.getInputStream().read());
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(String.valueOf(waited), waited >= 150 && waited < 2000);
+        } finally {
+            idle.stop(1);
+        }
+    }
+
+    private static byte[] big() {
+        byte[] bytes = new byte[BIG_SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        return bytes;
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void send(Socket socket, String request) throws IOException {
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a little at a time with pauses in between.
+     */
+    private static final class SlowInputStream extends InputStream {
+        private final InputStream in;
+        private int reads;
+
+        private SlowInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            if (++reads % 64 == 0) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return in.read(b, offset, Math.min(length, 1024));
+        }
+    }
+
+    private static final class Response {
+        private String protocol;
+        private int code;
+        private final Map<String, String> headers = new HashMap<>();
+        private byte[] body;
+
+        private static Response read(InputStream in) throws IOException {
+            Response response = new Response();
+            String[] status = line(in).split(" ", 3);
+            response.protocol = status[0];
+            response.code = Integer.parseInt(status[1]);
+            String line;
+            while (!(line = line(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                response.headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+
+            String length = response.headers.get("content-length");
+            if ("chunked".equals(response.headers.get("transfer-encoding"))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                int size;
+                while ((size = Integer.parseInt(line(in), 16)) > 0) {
+                    out.write(exactly(in, size));
+                    line(in);
+                }
+                line(in);
+                response.body = out.toByteArray();
+            } else if (length != null) {
+                response.body = exactly(in, Integer.parseInt(length));
+            } else {
+                response.body = readAll(in);
+            }
+            return response;
+        }
+
+        private String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        private static String line(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new IOException("Connection closed in the middle of a line");
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            return line.toString();
+        }
+
+        private static byte[] exactly(InputStream in, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read < 0) {
+                    throw new IOException("Connection closed after " + offset + " of " + length + " bytes");
+                }
+                offset += read;
+            }
+            return bytes;
+        }
+    }
+}
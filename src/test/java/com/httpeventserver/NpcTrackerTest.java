@@ -0,0 +1,217 @@
+package com.httpeventserver;
+
+import net.runelite.api.NPC;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NpcTrackerTest {
+    private static final int CAPACITY = 8;
+    // The tracker's table has the next power of two above twice the capacity buckets
+    private static final int MASK = 16 - 1;
+
+    @Test
+    public void spawnAndDespawn() {
+        NpcTracker tracker = tracker(CAPACITY);
+        NPC goblin = npc(1, 3029);
+        NPC imp = npc(2, 3134);
+        NPC man = npc(3, 3106);
+        tracker.add(goblin);
+        tracker.add(imp);
+        tracker.add(man);
+        assertEquals(3, tracker.size());
+
+        tracker.remove(imp);
+        assertEquals(2, tracker.size());
+        assertEquals(indexes(1, 3), tracked(tracker));
+
+        tracker.remove(goblin);
+        tracker.remove(man);
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.capture(1).size());
+    }
+
+    @Test
+    public void respawnReplacesTheNpc() {
+        NpcTracker tracker = tracker(CAPACITY);
+        NPC goblin = npc(1, 3029);
+        NPC respawned = npc(1, 3030);
+        tracker.add(goblin);
+        tracker.add(respawned);
+        assertEquals(1, tracker.size());
+        assertEquals(3030, tracker.capture(1).toJson(null, -1, null).get(0).getAsJsonObject().get("id").getAsInt());
+
+        // A late despawn of the NPC that was replaced keeps the new one
+        tracker.remove(goblin);
+        assertEquals(1, tracker.size());
+        tracker.remove(npc(2, 3029));
+        assertEquals(1, tracker.size());
+        tracker.remove(respawned);
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void collisionChain() {
+        List<Integer> chain = sameHome(3, 5);
+        NpcTracker tracker = tracker(CAPACITY);
+        List<NPC> npcs = new ArrayList<>();
+        for (int index : chain) {
+            NPC npc = npc(index, 1);
+            npcs.add(npc);
+            tracker.add(npc);
+        }
+        assertEquals(5, tracker.size());
+
+        // Removing from the head and the middle of the chain keeps the rest reachable
+        tracker.remove(npcs.get(0));
+        tracker.remove(npcs.get(2));
+        assertEquals(3, tracker.size());
+        assertEquals(indexes(chain.get(1), chain.get(3), chain.get(4)), tracked(tracker));
+        for (int i : new int[]{1, 3, 4}) {
+            tracker.add(npcs.get(i));
+        }
+        assertEquals(3, tracker.size());
+
+        for (int i : new int[]{4, 1, 3}) {
+            tracker.remove(npcs.get(i));
+        }
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void chainWrapsAroundTheTable() {
+        List<Integer> last = sameHome(MASK, 3);
+        int first = sameHome(0, 1).get(0);
+        NpcTracker tracker = tracker(CAPACITY);
+        NPC a = npc(last.get(0), 1);
+        NPC b = npc(last.get(1), 1);
+        NPC c = npc(last.get(2), 1);
+        NPC d = npc(first, 1);
+        // a takes the last bucket, b and c wrap to the first two, d is pushed behind them
+        tracker.add(a);
+        tracker.add(b);
+        tracker.add(c);
+        tracker.add(d);
+        assertEquals(indexes(last.get(0), last.get(1), last.get(2), first), tracked(tracker));
+
+        tracker.remove(a);
+        assertEquals(indexes(last.get(1), last.get(2), first), tracked(tracker));
+        tracker.remove(b);
+        tracker.add(d);
+        tracker.add(c);
+        assertEquals(2, tracker.size());
+        tracker.remove(d);
+        tracker.remove(c);
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void spawnsBeyondCapacityAreIgnored() {
+        NpcTracker tracker = tracker(4);
+        List<NPC> npcs = new ArrayList<>();
+        for (int index = 1; index <= 5; index++) {
+            NPC npc = npc(index, 1);
+            npcs.add(npc);
+            tracker.add(npc);
+        }
+        assertEquals(4, tracker.size());
+        assertEquals(indexes(1, 2, 3, 4), tracked(tracker));
+
+        // Known NPCs are still updated while the tracker is full
+        tracker.add(npc(4, 2));
+        assertEquals(4, tracker.size());
+        tracker.remove(npcs.get(4));
+        assertEquals(4, tracker.size());
+
+        tracker.remove(npcs.get(0));
+        tracker.add(npcs.get(4));
+        assertEquals(indexes(2, 3, 4, 5), tracked(tracker));
+    }
+
+    @Test
+    public void clear() {
+        NpcTracker tracker = tracker(CAPACITY);
+        for (int index = 1; index <= CAPACITY; index++) {
+            tracker.add(npc(index, 1));
+        }
+        tracker.clear();
+        assertEquals(0, tracker.size());
+        for (int index = 1; index <= CAPACITY; index++) {
+            tracker.add(npc(index, 1));
+        }
+        assertEquals(CAPACITY, tracker.size());
+    }
+
+    @Test
+    public void captureLooksUpMaxHealthById() {
+        NpcTracker tracker = new NpcTracker(CAPACITY, id -> id == 3029 ? 5 : 0);
+        tracker.add(npc(1, 3029));
+        tracker.add(npc(2, 1));
+
+        NpcTracker.View view = tracker.capture(7);
+        assertEquals(7, view.tick);
+        assertEquals(5, view.toJson(null, -1, new int[]{3029}).get(0).getAsJsonObject().get("maxHealth").getAsInt());
+        assertEquals(1, view.toJson(null, -1, new int[]{1}).size());
+    }
+
+    private static NpcTracker tracker(int capacity) {
+        return new NpcTracker(capacity, id -> 0);
+    }
+
+    /**
+     * @return NPC indexes whose home bucket in the tracker's table is the given one
+     */
+    private static List<Integer> sameHome(int bucket, int count) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int index = 0; indexes.size() < count; index++) {
+            if ((index * 0x9E3779B9 & MASK) == bucket) {
+                indexes.add(index);
+            }
+        }
+        return indexes;
+    }
+
+    private static Set<Integer> tracked(NpcTracker tracker) {
+        Set<Integer> indexes = new HashSet<>();
+        tracker.capture(1).toJson(null, -1, null).forEach(npc -> indexes.add(npc.getAsJsonObject().get("index").getAsInt()));
+        assertEquals(tracker.size(), indexes.size());
+        return indexes;
+    }
+
+    private static Set<Integer> indexes(int... values) {
+        Set<Integer> indexes = new HashSet<>();
+        for (int value : values) {
+            indexes.add(value);
+        }
+        return indexes;
+    }
+
+    private static NPC npc(int index, int id) {
+        return (NPC) Proxy.newProxyInstance(NPC.class.getClassLoader(), new Class<?>[]{NPC.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getIndex":
+                    return index;
+                case "getId":
+                    return id;
+                case "getName":
+                    return "NPC " + index;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "NPC " + index;
+                default:
+                    Class<?> type = method.getReturnType();
+                    return type == int.class ? -1 : type == boolean.class ? false : null;
+            }
+        });
+    }
+}
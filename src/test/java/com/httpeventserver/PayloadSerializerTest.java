@@ -0,0 +1,35 @@
+package com.httpeventserver;
+
+import net.runelite.api.Item;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class PayloadSerializerTest {
+    private static final Item[] ITEMS = {
+            new Item(995, 2_147_483_647), new Item(-1, 0), new Item(526, 1), new Item(4151, 10),
+            new Item(1, -5), new Item(11840, 100_000), new Item(-1, Integer.MIN_VALUE), new Item(0, 9),
+            new Item(1127, 12), new Item(1079, 1), new Item(-1, 0), new Item(1163, 1),
+            new Item(2550, 1), new Item(892, 1_000), new Item(3105, 1)
+    };
+
+    @Test
+    public void inventoryMatchesTheGsonPayload() {
+        assertEquals(json(PayloadSerializer.toBytes(PayloadSerializer.inventory(ITEMS))), json(PayloadSerializer.inventoryJson(ITEMS)));
+        assertEquals("[]", json(PayloadSerializer.inventoryJson(new Item[0])));
+        assertEquals("[]", json(PayloadSerializer.inventoryJson(null)));
+    }
+
+    @Test
+    public void equipmentMatchesTheGsonPayload() {
+        assertEquals(json(PayloadSerializer.toBytes(PayloadSerializer.equipment(ITEMS))), json(PayloadSerializer.equipmentJson(ITEMS)));
+        assertEquals("{}", json(PayloadSerializer.equipmentJson(new Item[0])));
+        assertEquals("[]", json(PayloadSerializer.equipmentJson(null)));
+    }
+
+    private static String json(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
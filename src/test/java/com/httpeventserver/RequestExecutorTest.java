@@ -0,0 +1,181 @@
+package com.httpeventserver;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestExecutorTest {
+    @Test
+    public void boundedPoolRunsOverflowOnTheCaller() throws InterruptedException {
+        RequestExecutor executor = new RequestExecutor(ExecutorMode.BOUNDED_POOL, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+                finished.countDown();
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(finished::countDown);
+            assertEquals(1, executor.getActive());
+            assertEquals(1, executor.getQueued());
+
+            // Worker and queue are taken, the third task runs on this thread
+            Thread caller = Thread.currentThread();
+            Thread[] ranOn = new Thread[1];
+            executor.execute(() -> ranOn[0] = Thread.currentThread());
+            assertEquals(caller, ranOn[0]);
+            assertEquals(1, executor.getRejected());
+
+            release.countDown();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            waitForCompleted(executor, 2);
+            assertEquals(0, executor.getActive());
+            assertEquals(0, executor.getQueued());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void singleThreadQueuesEverything() throws InterruptedException {
+        RequestExecutor executor = new RequestExecutor(ExecutorMode.SINGLE_THREAD, 8, 0);
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        try {
+            for (int i = 0; i < 100; i++) {
+                int task = i;
+                executor.execute(() -> {
+                    threads.add(Thread.currentThread());
+                    order.add(task);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(1, threads.size());
+            assertEquals(0, executor.getRejected());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, (int) order.get(i));
+            }
+            assertEquals(ExecutorMode.SINGLE_THREAD.name(), executor.toJson().get("mode").getAsString());
+            assertEquals(1, executor.toJson().get("workerThreads").getAsInt());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void virtualThreadsWhenAvailable() throws InterruptedException {
+        RequestExecutor executor = new RequestExecutor(ExecutorMode.VIRTUAL_THREADS, 2, 0);
+        boolean available;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            available = true;
+        } catch (NoSuchMethodException e) {
+            available = false;
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        try {
+            assertEquals(available ? ExecutorMode.VIRTUAL_THREADS : ExecutorMode.BOUNDED_POOL, executor.getMode());
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    await(release);
+                });
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // The in-flight limit applies to virtual threads as well
+            boolean[] ran = new boolean[1];
+            executor.execute(() -> ran[0] = true);
+            assertTrue(ran[0]);
+            assertEquals(1, executor.getRejected());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void guardedHandlerAnswersOverloadWith503() throws Exception {
+        RequestExecutor executor = new RequestExecutor(ExecutorMode.BOUNDED_POOL, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", RequestExecutor.guard(exchange -> {
+            started.countDown();
+            await(release);
+            exchange.sendResponseHeaders(200, 2);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(new byte[]{'o', 'k'});
+            }
+        }));
+        server.setExecutor(executor);
+        server.start();
+        ExecutorService clients = Executors.newSingleThreadExecutor();
+        try {
+            URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/");
+            Future<Integer> first = clients.submit(() -> code(url));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            HttpURLConnection second = (HttpURLConnection) url.openConnection();
+            assertEquals(503, second.getResponseCode());
+            assertEquals("1", second.getHeaderField("Retry-After"));
+
+            release.countDown();
+            assertEquals(200, (int) first.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executor.getRejected());
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    private static int code(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        int code = connection.getResponseCode();
+        connection.getInputStream().close();
+        return code;
+    }
+
+    private static void waitForCompleted(RequestExecutor executor, long completed) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCompleted() < completed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(completed, executor.getCompleted());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+    private final AtomicInteger serialized = new AtomicInteger();
+
+    @Test
+    public void sameVersionIsSerializedOnce() {
+        ResponseCache cache = new ResponseCache(1);
+        CachedResponse first = cache.get("inv", 3, payload(3));
+        CachedResponse second = cache.get("inv", 3, payload(3));
+        assertSame(first, second);
+        assertEquals(1, serialized.get());
+        assertEquals("{\"version\":3}", new String(first.body, StandardCharsets.UTF_8));
+        assertEquals(CachedResponse.JSON, first.contentType);
+    }
+
+    @Test
+    public void newerVersionReplacesTheBody() {
+        ResponseCache cache = new ResponseCache(1);
+        CachedResponse first = cache.get("inv", 3, payload(3));
+        CachedResponse second = cache.get("inv", 4, payload(4));
+        assertEquals(4, second.version);
+        assertNotEquals(first.etag, second.etag);
+        assertSame(second, cache.get("inv", 4, payload(4)));
+        assertEquals(2, serialized.get());
+    }
+
+    @Test
+    public void olderSnapshotDoesNotReplaceTheCachedBody() {
+        ResponseCache cache = new ResponseCache(1);
+        CachedResponse newer = cache.get("inv", 4, payload(4));
+        CachedResponse older = cache.get("inv", 3, payload(3));
+        assertEquals(3, older.version);
+        assertSame(newer, cache.get("inv", 4, payload(4)));
+        assertEquals(2, serialized.get());
+    }
+
+    @Test
+    public void etagsDependOnStartTimeKeyAndVersion() {
+        assertEquals("\"z-inv-3\"", new ResponseCache(35).get("inv", 3, payload(3)).etag);
+        assertNotEquals(new ResponseCache(1).get("inv", 3, payload(3)).etag,
+                new ResponseCache(2).get("inv", 3, payload(3)).etag);
+        ResponseCache cache = new ResponseCache(1);
+        assertNotEquals(cache.get("inv", 3, payload(3)).etag, cache.get("equip", 3, payload(3)).etag);
+    }
+
+    @Test
+    public void formatsHaveTheirOwnSlots() {
+        ResponseCache cache = new ResponseCache(1);
+        CachedResponse json = cache.get("inv", 3, WireFormat.JSON, payload(3));
+        CachedResponse cbor = cache.get("inv", 3, WireFormat.CBOR, payload(3));
+        assertEquals(WireFormat.CBOR.contentType, cbor.contentType);
+        assertNotEquals(json.etag, cbor.etag);
+        assertArrayEquals(WireFormat.CBOR.encode(payload(3).get()), cbor.body);
+        assertSame(json, cache.get("inv", 3, WireFormat.JSON, payload(3)));
+    }
+
+    @Test
+    public void variantsCannotEvictFixedKeys() {
+        ResponseCache cache = new ResponseCache(1);
+        CachedResponse inv = cache.get("inv", 3, payload(3));
+        CachedResponse firstVariant = cache.getVariant("events-since-0", 3, WireFormat.JSON, payload(3));
+        for (int since = 1; since <= 1000; since++) {
+            cache.getVariant("events-since-" + since, 3, WireFormat.JSON, payload(3));
+        }
+        assertSame(inv, cache.get("inv", 3, payload(3)));
+
+        // The least recently used variants were dropped
+        int before = serialized.get();
+        CachedResponse again = cache.getVariant("events-since-0", 3, WireFormat.JSON, payload(3));
+        assertEquals(before + 1, serialized.get());
+        assertEquals(firstVariant.etag, again.etag);
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        ResponseCache cache = new ResponseCache(1);
+        CachedResponse inv = cache.get("inv", 3, payload(3));
+        cache.clear();
+        assertNotSame(inv, cache.get("inv", 3, payload(3)));
+    }
+
+    @Test
+    public void ifNoneMatch() {
+        CachedResponse response = new CachedResponse(3, "\"a-inv-3\"", CachedResponse.JSON, new byte[0]);
+        assertFalse(response.matches(null));
+        assertTrue(response.matches("\"a-inv-3\""));
+        assertTrue(response.matches("W/\"a-inv-3\""));
+        assertTrue(response.matches("\"a-inv-2\", \"a-inv-3\""));
+        assertTrue(response.matches("*"));
+        assertFalse(response.matches("\"a-inv-2\""));
+        assertFalse(response.matches("a-inv-3"));
+    }
+
+    @Test
+    public void sendAnswersNotModified() throws IOException {
+        CachedResponse response = new ResponseCache(1).get("inv", 3, payload(3));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/inv", response::send);
+        server.start();
+        try {
+            URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/inv");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(response.etag, connection.getHeaderField("ETag"));
+            assertEquals(String.valueOf(response.body.length), connection.getHeaderField("Content-Length"));
+            try (InputStream in = connection.getInputStream()) {
+                byte[] body = new byte[response.body.length];
+                int read = 0;
+                while (read < body.length) {
+                    read += in.read(body, read, body.length - read);
+                }
+                assertArrayEquals(response.body, body);
+            }
+
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("If-None-Match", response.etag);
+            assertEquals(304, connection.getResponseCode());
+            assertEquals(response.etag, connection.getHeaderField("ETag"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private Supplier<JsonObject> payload(long version) {
+        return () -> {
+            serialized.incrementAndGet();
+            JsonObject object = new JsonObject();
+            object.add("version", new JsonPrimitive(version));
+            return object;
+        };
+    }
+}
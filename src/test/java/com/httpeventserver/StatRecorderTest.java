@@ -0,0 +1,186 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StatRecorderTest {
+    private static final String HEALTH = "currentHealth";
+    // Tiers of 20 slots: the last 20 ticks, 200 ticks in tens and 2000 ticks in hundreds
+    private static final int CAPACITY = 20;
+
+    @Test
+    public void singleTicks() {
+        StatRecorder recorder = recorded(0, 9);
+        JsonObject range = recorder.range(HEALTH, 0, 9, 1);
+        assertEquals(0, range.get("from").getAsInt());
+        assertEquals(9, range.get("to").getAsInt());
+        assertEquals(1, range.get("step").getAsInt());
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, ints(range, "ticks"));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, ints(range, "min"));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, ints(range, "max"));
+    }
+
+    @Test
+    public void groupsOfSteps() {
+        JsonObject range = recorded(0, 9).range(HEALTH, 0, 9, 5);
+        assertArrayEquals(new int[]{0, 5}, ints(range, "ticks"));
+        assertArrayEquals(new int[]{0, 5}, ints(range, "min"));
+        assertArrayEquals(new int[]{4, 9}, ints(range, "max"));
+        assertEquals("[2,7]", range.getAsJsonArray("avg").toString());
+    }
+
+    @Test
+    public void otherMetrics() {
+        StatRecorder recorder = new StatRecorder(CAPACITY);
+        recorder.record(1, player(50, 3200, 3400));
+        JsonObject range = recorder.range("x", 0, 1, 1);
+        assertArrayEquals(new int[]{3200}, ints(range, "min"));
+        assertArrayEquals(new int[]{3400}, ints(recorder.range("y", 0, 1, 1), "min"));
+    }
+
+    @Test
+    public void rangeStartDecidesTheTier() {
+        // Single ticks from 980, tens from 800, hundreds from 0
+        StatRecorder recorder = recorded(0, 999);
+
+        JsonObject single = recorder.range(HEALTH, 980, 999, 1);
+        assertEquals(1, single.get("step").getAsInt());
+        assertEquals(20, ints(single, "ticks").length);
+        assertEquals(980, ints(single, "ticks")[0]);
+
+        JsonObject tens = recorder.range(HEALTH, 979, 999, 1);
+        assertEquals(10, tens.get("step").getAsInt());
+        assertArrayEquals(new int[]{970, 980, 990}, ints(tens, "ticks"));
+        assertArrayEquals(new int[]{970, 980, 990}, ints(tens, "min"));
+        assertArrayEquals(new int[]{979, 989, 999}, ints(tens, "max"));
+        assertEquals("[974.5,984.5,994.5]", tens.getAsJsonArray("avg").toString());
+
+        assertEquals(10, recorder.range(HEALTH, 800, 999, 1).get("step").getAsInt());
+
+        JsonObject hundreds = recorder.range(HEALTH, 799, 999, 1);
+        assertEquals(100, hundreds.get("step").getAsInt());
+        assertArrayEquals(new int[]{700, 800, 900}, ints(hundreds, "ticks"));
+        assertArrayEquals(new int[]{799, 899, 999}, ints(hundreds, "max"));
+    }
+
+    @Test
+    public void stepIsRoundedUpToTheBucketWidth() {
+        JsonObject range = recorded(0, 999).range(HEALTH, 800, 999, 15);
+        assertEquals(20, range.get("step").getAsInt());
+        assertArrayEquals(new int[]{800, 820, 840, 860, 880, 900, 920, 940, 960, 980}, ints(range, "ticks"));
+        assertArrayEquals(new int[]{819, 839, 859, 879, 899, 919, 939, 959, 979, 999}, ints(range, "max"));
+    }
+
+    @Test
+    public void ringsWrapAround() {
+        StatRecorder recorder = recorded(0, 29);
+
+        JsonObject single = recorder.range(HEALTH, 10, 29, 1);
+        int[] expected = new int[20];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = 10 + i;
+        }
+        assertArrayEquals(expected, ints(single, "ticks"));
+        assertArrayEquals(expected, ints(single, "min"));
+
+        // Ticks 0 to 9 were overwritten in the single tick ring and come from the tens
+        JsonObject tens = recorder.range(HEALTH, 0, 29, 1);
+        assertEquals(10, tens.get("step").getAsInt());
+        assertArrayEquals(new int[]{0, 10, 20}, ints(tens, "ticks"));
+        assertArrayEquals(new int[]{9, 19, 29}, ints(tens, "max"));
+    }
+
+    @Test
+    public void partialBucketAfterWrapping() {
+        StatRecorder recorder = recorded(0, 204);
+        JsonObject range = recorder.range(HEALTH, 10, 204, 10);
+        assertEquals(10, range.get("from").getAsInt());
+        int[] ticks = ints(range, "ticks");
+        assertEquals(20, ticks.length);
+        assertEquals(10, ticks[0]);
+        assertEquals(200, ticks[19]);
+        assertEquals(204, ints(range, "max")[19]);
+        assertEquals(202, range.getAsJsonArray("avg").get(19).getAsInt());
+    }
+
+    @Test
+    public void rangeOutsideTheRecordedTicks() {
+        StatRecorder recorder = recorded(0, 9);
+
+        JsonObject clamped = recorder.range(HEALTH, -50, 1000, 1);
+        assertEquals(0, clamped.get("from").getAsInt());
+        assertEquals(9, clamped.get("to").getAsInt());
+        assertEquals(10, ints(clamped, "ticks").length);
+
+        JsonObject future = recorder.range(HEALTH, 50, 60, 1);
+        assertEquals(0, ints(future, "ticks").length);
+
+        JsonObject reversed = recorder.range(HEALTH, 8, 2, 1);
+        assertEquals(0, ints(reversed, "ticks").length);
+    }
+
+    @Test
+    public void rangeOlderThanEveryTier() {
+        // The hundreds hold ticks 1000 to 2999
+        StatRecorder recorder = recorded(0, 2999);
+
+        JsonObject range = recorder.range(HEALTH, 0, 2999, 1);
+        assertEquals(1000, range.get("from").getAsInt());
+        assertEquals(100, range.get("step").getAsInt());
+        int[] ticks = ints(range, "ticks");
+        assertEquals(20, ticks.length);
+        assertEquals(1000, ticks[0]);
+        assertEquals(2900, ticks[19]);
+
+        assertEquals(0, ints(recorder.range(HEALTH, 0, 500, 1), "ticks").length);
+    }
+
+    @Test
+    public void earlierTickStartsOver() {
+        StatRecorder recorder = recorded(100, 120);
+        recorder.record(5, player(7, 0, 0));
+        assertEquals(5, recorder.lastTick());
+        JsonObject range = recorder.range(HEALTH, 0, 200, 1);
+        assertArrayEquals(new int[]{5}, ints(range, "ticks"));
+        assertArrayEquals(new int[]{7}, ints(range, "min"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownMetric() {
+        new StatRecorder(CAPACITY).range("bogus", 0, 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stepBelowOne() {
+        new StatRecorder(CAPACITY).range(HEALTH, 0, 1, 0);
+    }
+
+    /**
+     * @return a recorder with every tick from first to last, the health being the tick
+     */
+    private static StatRecorder recorded(int first, int last) {
+        StatRecorder recorder = new StatRecorder(CAPACITY);
+        for (int tick = first; tick <= last; tick++) {
+            recorder.record(tick, player(tick, 0, 0));
+        }
+        return recorder;
+    }
+
+    private static GameStateSnapshot.PlayerState player(int health, int x, int y) {
+        return new GameStateSnapshot.PlayerState(0, 0, "null", 100, 100, 0, 0, health, 99,
+                new GameStateSnapshot.Coordinates(x, y, 0, 0, 0, 0));
+    }
+
+    private static int[] ints(JsonObject range, String name) {
+        JsonArray array = range.getAsJsonArray(name);
+        int[] values = new int[array.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i).getAsInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,237 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.runelite.api.Item;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StateStoreTest {
+    // File header, then every record is [int length][byte type][long time][int tick][body]
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 4;
+
+    private Path dir;
+    private File file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("state-store-test");
+        file = new File(dir.toFile(), "state.dat");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void emptyStore() throws IOException {
+        StateStore store = new StateStore(file);
+        StateStore.Restored restored = store.open(0);
+        assertNull(restored.bank);
+        assertEquals(0, restored.loot.size());
+        store.close();
+
+        assertEquals(HEADER_SIZE + 4, file.length());
+    }
+
+    @Test
+    public void recordsAreReadBack() throws IOException {
+        StateStore store = new StateStore(file);
+        store.open(0);
+        store.appendBank(BankIndex.EMPTY.update(new Item[]{new Item(995, 1000), new Item(-1, 0), new Item(526, 3)}));
+        store.appendLoot(loot(1_000, 10, "Goblin"));
+        store.appendLoot(new StateStore.LootRecord(2_000, 20, 3030, null, "Imp", new int[0], new int[0]));
+        store.close();
+
+        StateStore reopened = new StateStore(file);
+        StateStore.Restored restored = reopened.open(0);
+        reopened.close();
+
+        assertEquals(3, restored.bank.length);
+        assertEquals(995, restored.bank[0].getId());
+        assertEquals(1000, restored.bank[0].getQuantity());
+        assertEquals(-1, restored.bank[1].getId());
+        assertEquals(526, restored.bank[2].getId());
+        assertEquals(3, restored.bank[2].getQuantity());
+
+        assertEquals(2, restored.loot.size());
+        StateStore.LootRecord goblin = restored.loot.get(0);
+        assertEquals(1_000, goblin.time);
+        assertEquals(10, goblin.tick);
+        assertEquals(3029, goblin.npcId);
+        assertEquals("Goblin", goblin.npcName);
+        assertEquals("Goblin (3029)", goblin.interactingCode);
+        assertArrayEquals(new int[]{526, 995}, goblin.itemIds);
+        assertArrayEquals(new int[]{1, 12}, goblin.quantities);
+        // Names are stored as UTF-8 strings, a missing name comes back empty
+        assertEquals("", restored.loot.get(1).npcName);
+        assertEquals(0, restored.loot.get(1).itemIds.length);
+    }
+
+    @Test
+    public void closeTruncatesToTheRecords() throws IOException {
+        StateStore store = new StateStore(file);
+        store.open(0);
+        store.appendLoot(loot(1_000, 10, "Goblin"));
+        store.close();
+
+        int body = 4 + 4 + "Goblin".length() + 4 + "Goblin (3029)".length() + 4 + 2 * 8;
+        assertEquals(HEADER_SIZE + RECORD_HEADER_SIZE + body + 4, file.length());
+    }
+
+    @Test
+    public void restoresOnlyRecentLoot() throws IOException {
+        StateStore store = new StateStore(file);
+        store.open(0);
+        for (int i = 1; i <= 10; i++) {
+            store.appendLoot(loot(i * 1_000, i, "Goblin"));
+        }
+        store.close();
+
+        StateStore reopened = new StateStore(file);
+        StateStore.Restored restored = reopened.open(7_000);
+        assertEquals(4, restored.loot.size());
+        assertEquals(7_000, restored.loot.get(0).time);
+
+        JsonArray range = reopened.readLoot(2_500, 5_000, 100);
+        assertEquals(3, range.size());
+        assertEquals(3_000, range.get(0).getAsJsonObject().get("time").getAsLong());
+        assertEquals(5_000, range.get(2).getAsJsonObject().get("time").getAsLong());
+        assertEquals(2, reopened.readLoot(0, Long.MAX_VALUE, 2).size());
+        assertEquals(0, reopened.readLoot(11_000, Long.MAX_VALUE, 100).size());
+        reopened.close();
+
+        assertEquals(0, reopened.readLoot(0, Long.MAX_VALUE, 100).size());
+    }
+
+    @Test
+    public void compactionKeepsTheLatestBank() throws IOException {
+        StateStore store = new StateStore(file);
+        store.open(0);
+        store.appendLoot(loot(1_000, 10, "Goblin"));
+        BankIndex bank = BankIndex.EMPTY;
+        for (int i = 1; i <= 100; i++) {
+            bank = bank.update(new Item[]{new Item(995, i)});
+            store.appendBank(bank);
+        }
+        store.appendLoot(loot(2_000, 20, "Imp"));
+        store.close();
+
+        int bankRecord = RECORD_HEADER_SIZE + 4 + 8;
+        int goblinRecord = RECORD_HEADER_SIZE + 4 + 4 + 6 + 4 + 13 + 4 + 2 * 8;
+        int impRecord = RECORD_HEADER_SIZE + 4 + 4 + 3 + 4 + 13 + 4 + 2 * 8;
+        assertEquals(HEADER_SIZE + bankRecord + goblinRecord + impRecord + 4, file.length());
+        assertFalse(new File(file.getPath() + ".next").exists());
+
+        StateStore reopened = new StateStore(file);
+        StateStore.Restored restored = reopened.open(0);
+        reopened.close();
+        assertEquals(100, restored.bank[0].getQuantity());
+        assertEquals(2, restored.loot.size());
+        assertEquals("Goblin", restored.loot.get(0).npcName);
+        assertEquals("Imp", restored.loot.get(1).npcName);
+    }
+
+    @Test
+    public void appendsAfterCompaction() throws IOException {
+        StateStore store = new StateStore(file);
+        store.open(0);
+        BankIndex bank = BankIndex.EMPTY;
+        for (int i = 1; i <= 100; i++) {
+            bank = bank.update(new Item[]{new Item(995, i)});
+            store.appendBank(bank);
+        }
+        store.close();
+
+        StateStore reopened = new StateStore(file);
+        reopened.open(0);
+        reopened.appendLoot(loot(3_000, 30, "Goblin"));
+        reopened.close();
+
+        StateStore last = new StateStore(file);
+        StateStore.Restored restored = last.open(0);
+        last.close();
+        assertEquals(100, restored.bank[0].getQuantity());
+        assertEquals(1, restored.loot.size());
+    }
+
+    @Test
+    public void secondStoreCanNotUseALockedFile() throws IOException {
+        StateStore store = new StateStore(file);
+        store.open(0);
+        StateStore second = new StateStore(file);
+        try {
+            second.open(0);
+            fail("The file is locked");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("used by another client"));
+        }
+        second.close();
+        store.close();
+
+        StateStore third = new StateStore(file);
+        third.open(0);
+        third.close();
+    }
+
+    @Test
+    public void opensAndClosesOnItsOwnThread() throws Exception {
+        StateStore store = new StateStore(file);
+        // Appended before the store is open, written once it is
+        store.appendLoot(loot(1_000, 10, "Goblin"));
+        assertEquals(0, store.openAsync(0).get(5, TimeUnit.SECONDS).loot.size());
+        CompletableFuture<Void> closed = store.closeAsync();
+
+        // Reopening once the file is released, as after switching accounts and back
+        StateStore reopened = new StateStore(file);
+        StateStore.Restored restored = closed.thenCompose(ignored -> reopened.openAsync(0)).get(5, TimeUnit.SECONDS);
+        assertEquals(1, restored.loot.size());
+        assertEquals("Goblin", restored.loot.get(0).npcName);
+        reopened.closeAsync().get(5, TimeUnit.SECONDS);
+        assertTrue(closed.isDone());
+
+        // A closed store can not be opened again
+        try {
+            reopened.openAsync(0).get(5, TimeUnit.SECONDS);
+            fail("The store is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(reopened.closeAsync().isDone());
+    }
+
+    @Test
+    public void lootJson() {
+        JsonObject json = loot(1_000, 10, "Goblin").toJson();
+        assertEquals(1_000, json.get("time").getAsLong());
+        assertEquals(10, json.get("tickCount").getAsInt());
+        assertEquals("Goblin", json.getAsJsonObject("npc").get("name").getAsString());
+        assertEquals(995, json.getAsJsonArray("loot").get(1).getAsJsonObject().get("id").getAsInt());
+    }
+
+    private static StateStore.LootRecord loot(long time, int tick, String name) {
+        return new StateStore.LootRecord(time, tick, 3029, name, "Goblin (3029)", new int[]{526, 995}, new int[]{1, 12});
+    }
+}
@@ -0,0 +1,203 @@
+package com.httpeventserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class WireFormatTest {
+    @Test
+    public void formatParameterWins() {
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(params("format", "CBOR"), "application/json"));
+        assertSame(WireFormat.JSON, WireFormat.negotiate(params("format", "json"), "application/cbor"));
+        assertNull(WireFormat.negotiate(params("format", "xml"), null));
+    }
+
+    @Test
+    public void acceptHeader() {
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, null));
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, "*/*"));
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, "text/html,application/xhtml+xml,*/*;q=0.8"));
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "application/cbor"));
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "Application/CBOR; schema=1"));
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "application/cbor, */*;q=0.1"));
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "application/json;q=0.5, application/cbor"));
+    }
+
+    @Test
+    public void acceptHeaderQualities() {
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, "application/cbor;q=0"));
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, "application/cbor; q=0.0, application/json"));
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, "application/cbor;q=0.5, application/json"));
+        assertSame(WireFormat.JSON, WireFormat.negotiate(null, "application/cbor;q=0.5, */*"));
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "application/cbor;q=0.5, */*;q=0.4"));
+        // A more specific range overrides a wildcard
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "application/json;q=0.2, */*, application/cbor;q=0.5"));
+        assertSame(WireFormat.CBOR, WireFormat.negotiate(null, "application/cbor;q=invalid"));
+    }
+
+    // RFC 8949 Appendix A
+
+    @Test
+    public void unsignedIntegers() {
+        assertCbor("00", 0);
+        assertCbor("01", 1);
+        assertCbor("0a", 10);
+        assertCbor("17", 23);
+        assertCbor("1818", 24);
+        assertCbor("1819", 25);
+        assertCbor("1864", 100);
+        assertCbor("18ff", 255);
+        assertCbor("190100", 256);
+        assertCbor("1903e8", 1000);
+        assertCbor("19ffff", 65535);
+        assertCbor("1a00010000", 65536);
+        assertCbor("1a000f4240", 1000000);
+        assertCbor("1affffffff", 4294967295L);
+        assertCbor("1b0000000100000000", 4294967296L);
+        assertCbor("1b000000e8d4a51000", 1000000000000L);
+        assertCbor("1b7fffffffffffffff", Long.MAX_VALUE);
+    }
+
+    @Test
+    public void negativeIntegers() {
+        assertCbor("20", -1);
+        assertCbor("29", -10);
+        assertCbor("37", -24);
+        assertCbor("3818", -25);
+        assertCbor("3863", -100);
+        assertCbor("38ff", -256);
+        assertCbor("390100", -257);
+        assertCbor("3903e7", -1000);
+        assertCbor("39ffff", -65536);
+        assertCbor("3a00010000", -65537);
+        assertCbor("3affffffff", -4294967296L);
+        assertCbor("3b0000000100000000", -4294967297L);
+        assertCbor("3b7fffffffffffffff", Long.MIN_VALUE);
+    }
+
+    @Test
+    public void doubles() {
+        // Floating point is always written as a double
+        assertCbor("fb3ff199999999999a", 1.1);
+        assertCbor("fb7e37e43c8800759c", 1.0e+300);
+        assertCbor("fbc010666666666666", -4.1);
+        assertCbor("fb3ff0000000000000", 1.0);
+    }
+
+    @Test
+    public void simpleValues() {
+        assertCbor("f4", new JsonPrimitive(false));
+        assertCbor("f5", new JsonPrimitive(true));
+        assertCbor("f6", JsonNull.INSTANCE);
+    }
+
+    @Test
+    public void strings() {
+        assertCbor("60", new JsonPrimitive(""));
+        assertCbor("6161", new JsonPrimitive("a"));
+        assertCbor("6449455446", new JsonPrimitive("IETF"));
+        assertCbor("62225c", new JsonPrimitive("\"\\"));
+        assertCbor("62c3bc", new JsonPrimitive("\u00fc"));
+        assertCbor("63e6b0b4", new JsonPrimitive("\u6c34"));
+    }
+
+    @Test
+    public void arraysAndMaps() {
+        assertCbor("80", new JsonArray());
+        assertCbor("83010203", array(1, 2, 3));
+        assertCbor("8301820203820405", array(1, array(2, 3), array(4, 5)));
+
+        JsonArray long25 = new JsonArray();
+        for (int i = 1; i <= 25; i++) {
+            long25.add(i);
+        }
+        assertCbor("98190102030405060708090a0b0c0d0e0f101112131415161718181819", long25);
+
+        assertCbor("a0", new JsonObject());
+        JsonObject map = new JsonObject();
+        map.addProperty("a", 1);
+        map.add("b", array(2, 3));
+        assertCbor("a26161016162820203", map);
+
+        JsonObject inner = new JsonObject();
+        inner.addProperty("b", "c");
+        assertCbor("826161a161626163", array("a", inner));
+
+        JsonObject letters = new JsonObject();
+        for (char c = 'a'; c <= 'e'; c++) {
+            letters.addProperty(String.valueOf(c), String.valueOf(Character.toUpperCase(c)));
+        }
+        assertCbor("a56161614161626142616361436164614461656145", letters);
+    }
+
+    @Test
+    public void nullMembersAreLeftOut() {
+        JsonObject object = new JsonObject();
+        object.add("a", JsonNull.INSTANCE);
+        object.addProperty("b", 1);
+        assertCbor("a1616201", object);
+    }
+
+    @Test
+    public void objectOfEncodedValues() {
+        byte[] cbor = WireFormat.CBOR.object(Arrays.asList("a", "b"),
+                Arrays.asList(WireFormat.CBOR.encode(new JsonPrimitive(1)), WireFormat.CBOR.encode(array(2, 3))));
+        assertEquals("a26161016162820203", hex(cbor));
+
+        byte[] json = WireFormat.JSON.object(Collections.singletonList("a"),
+                Collections.singletonList(WireFormat.JSON.encode(array(2, 3))));
+        assertEquals("{\"a\":[2,3]}", new String(json));
+    }
+
+    private static void assertCbor(String expected, long value) {
+        assertCbor(expected, new JsonPrimitive(value));
+    }
+
+    private static void assertCbor(String expected, double value) {
+        assertCbor(expected, new JsonPrimitive(value));
+    }
+
+    private static void assertCbor(String expected, JsonElement element) {
+        assertEquals(element.toString(), expected, hex(WireFormat.CBOR.encode(element)));
+    }
+
+    private static JsonArray array(Object... values) {
+        JsonArray array = new JsonArray();
+        for (Object value : values) {
+            if (value instanceof JsonElement) {
+                array.add((JsonElement) value);
+            } else if (value instanceof Number) {
+                array.add((Number) value);
+            } else {
+                array.add(String.valueOf(value));
+            }
+        }
+        return array;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            out.append(String.format("%02x", b & 0xff));
+        }
+        return out.toString();
+    }
+
+    private static Map<String, String> params(String name, String value) {
+        Map<String, String> params = new HashMap<>();
+        params.put(name, value);
+        return params;
+    }
+}